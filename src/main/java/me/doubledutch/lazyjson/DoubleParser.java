@@ -0,0 +1,241 @@
+package me.doubledutch.lazyjson;
+
+import java.math.BigInteger;
+
+/**
+ * Converts the characters of a number token straight from the source into a
+ * correctly rounded double without creating any objects.
+ * <p>
+ * Numbers with up to 19 significant digits that are exactly representable
+ * are handled with a single floating point operation, the rest with the
+ * algorithm by Eisel and Lemire described in "Number Parsing at a Gigabyte
+ * per Second". Anything else, such as numbers with more significant digits,
+ * is handed to Double.parseDouble.
+ */
+final class DoubleParser{
+	private static final int MIN_EXPONENT=-342;
+	private static final int MAX_EXPONENT=308;
+
+	// Powers of ten that are exact doubles
+	private static final double[] POWERS_OF_TEN=new double[23];
+
+	// The powers of five from 5^-342 to 5^308, each as the 128 most
+	// significant bits of the value with the top bit set. The high and low
+	// halves are stored next to each other.
+	private static final long[] POWERS_OF_FIVE=new long[2*(MAX_EXPONENT-MIN_EXPONENT+1)];
+
+	static{
+		double d=1.0;
+		for(int i=0;i<POWERS_OF_TEN.length;i++){
+			POWERS_OF_TEN[i]=d;
+			d*=10;
+		}
+		// Negative powers are rounded up, positive powers are truncated
+		BigInteger five=BigInteger.valueOf(5);
+		int index=0;
+		for(int q=MIN_EXPONENT;q<0;q++){
+			BigInteger power=five.pow(-q);
+			int z=power.bitLength();
+			BigInteger value;
+			if(q>=-27){
+				value=BigInteger.ONE.shiftLeft(z+127).divide(power).add(BigInteger.ONE);
+			}else{
+				value=BigInteger.ONE.shiftLeft(2*z+128).divide(power).add(BigInteger.ONE);
+				value=value.shiftRight(value.bitLength()-128);
+			}
+			POWERS_OF_FIVE[index++]=value.shiftRight(64).longValue();
+			POWERS_OF_FIVE[index++]=value.longValue();
+		}
+		for(int q=0;q<=MAX_EXPONENT;q++){
+			BigInteger value=five.pow(q);
+			if(value.bitLength()<128){
+				value=value.shiftLeft(128-value.bitLength());
+			}else{
+				value=value.shiftRight(value.bitLength()-128);
+			}
+			POWERS_OF_FIVE[index++]=value.shiftRight(64).longValue();
+			POWERS_OF_FIVE[index++]=value.longValue();
+		}
+	}
+
+	private DoubleParser(){
+
+	}
+
+	/**
+	 * Convert the characters of a number that has already been validated
+	 * by the tokenizer into a double.
+	 *
+	 * @param source the source data
+	 * @param startIndex the first index of the number
+	 * @param endIndex the index after the last index of the number
+	 * @return the closest double to the number
+	 */
+	protected static double parse(LazySource source,int startIndex,int endIndex){
+		int i=startIndex;
+		boolean negative=false;
+		if(source.charAt(i)=='-'){
+			negative=true;
+			i++;
+		}
+		// Collect up to 19 significant digits, which always fit in a long
+		// when treated as an unsigned value
+		long mantissa=0;
+		int digits=0;
+		int exponent=0;
+		boolean truncated=false;
+		char c=0;
+		for(;i<endIndex;i++){
+			c=source.charAt(i);
+			if(c<'0' || c>'9'){
+				break;
+			}
+			if(digits<19){
+				mantissa=mantissa*10+(c-'0');
+				if(mantissa!=0){
+					digits++;
+				}
+			}else{
+				exponent++;
+				truncated|=c!='0';
+			}
+		}
+		if(i<endIndex && c=='.'){
+			for(i++;i<endIndex;i++){
+				c=source.charAt(i);
+				if(c<'0' || c>'9'){
+					break;
+				}
+				if(digits<19){
+					mantissa=mantissa*10+(c-'0');
+					if(mantissa!=0){
+						digits++;
+					}
+					exponent--;
+				}else{
+					truncated|=c!='0';
+				}
+			}
+		}
+		if(i<endIndex){
+			// The exponent part
+			i++;
+			boolean negativeExponent=false;
+			c=source.charAt(i);
+			if(c=='-' || c=='+'){
+				negativeExponent=c=='-';
+				i++;
+			}
+			int value=0;
+			for(;i<endIndex;i++){
+				// Anything this large is an infinity or a zero anyway
+				if(value<100000){
+					value=value*10+(source.charAt(i)-'0');
+				}
+			}
+			exponent+=negativeExponent?-value:value;
+		}
+		if(truncated){
+			return Double.parseDouble(source.getString(startIndex,endIndex));
+		}
+		if(mantissa==0){
+			return negative?-0.0:0.0;
+		}
+		// Both the mantissa and the power of ten are exact doubles, so a
+		// single correctly rounded operation gives the right answer
+		if(exponent>=-22 && exponent<=22 && mantissa>=0 && mantissa<=(1L<<53)){
+			double d=(double)mantissa;
+			if(exponent<0){
+				d=d/POWERS_OF_TEN[-exponent];
+			}else{
+				d=d*POWERS_OF_TEN[exponent];
+			}
+			return negative?-d:d;
+		}
+		long bits=eiselLemire(mantissa,exponent);
+		if(bits==-1){
+			return Double.parseDouble(source.getString(startIndex,endIndex));
+		}
+		if(negative){
+			bits|=Long.MIN_VALUE;
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	// Returns the bits of the double closest to w*10^q, or -1 if the result
+	// could not be determined
+	private static long eiselLemire(long w,int q){
+		if(q<MIN_EXPONENT){
+			return 0;
+		}
+		if(q>MAX_EXPONENT){
+			return 0x7FFL<<52;
+		}
+		int index=2*(q-MIN_EXPONENT);
+		int lz=Long.numberOfLeadingZeros(w);
+		w<<=lz;
+		long high=multiplyHigh(w,POWERS_OF_FIVE[index]);
+		long low=w*POWERS_OF_FIVE[index];
+		// Only look at the lower half of the power if the bits that decide
+		// the rounding are not yet known
+		if((high&0x1FF)==0x1FF){
+			long secondHigh=multiplyHigh(w,POWERS_OF_FIVE[index+1]);
+			low+=secondHigh;
+			if(unsignedLess(low,secondHigh)){
+				high++;
+			}
+			if(low==-1 && (high&0x1FF)==0x1FF){
+				return -1;
+			}
+		}
+		int upperBit=(int)(high>>>63);
+		long mantissa=high>>>(upperBit+9);
+		int power2=((217706*q)>>16)+63+upperBit-lz+1023;
+		if(power2<=0){
+			// A subnormal number, or zero
+			if(-power2+1>=64){
+				return 0;
+			}
+			mantissa>>>=-power2+1;
+			mantissa+=mantissa&1;
+			mantissa>>>=1;
+			power2=mantissa<(1L<<52)?0:1;
+			return mantissa|((long)power2<<52);
+		}
+		// Exactly halfway between two doubles, round to even
+		if((low==0 || low==1) && q>=-4 && q<=23 && (mantissa&3)==1){
+			if((mantissa<<(upperBit+9))==high){
+				mantissa&=~1L;
+			}
+		}
+		mantissa+=mantissa&1;
+		mantissa>>>=1;
+		if(mantissa>=(2L<<52)){
+			mantissa=1L<<52;
+			power2++;
+		}
+		mantissa&=~(1L<<52);
+		if(power2>=0x7FF){
+			return 0x7FFL<<52;
+		}
+		return mantissa|((long)power2<<52);
+	}
+
+	// The high 64 bits of the unsigned 128 bit product of two longs
+	private static long multiplyHigh(long x,long y){
+		long x0=x&0xFFFFFFFFL;
+		long x1=x>>>32;
+		long y0=y&0xFFFFFFFFL;
+		long y1=y>>>32;
+		long p00=x0*y0;
+		long p01=x0*y1;
+		long p10=x1*y0;
+		long p11=x1*y1;
+		long middle=p10+(p00>>>32)+(p01&0xFFFFFFFFL);
+		return p11+(middle>>>32)+(p01>>>32);
+	}
+
+	private static boolean unsignedLess(long a,long b){
+		return (a^Long.MIN_VALUE)<(b^Long.MIN_VALUE);
+	}
+}
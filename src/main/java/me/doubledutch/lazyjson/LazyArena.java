@@ -0,0 +1,138 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * An arena holding the tokens of parsed documents. Tokens are carved out of
+ * slabs of preallocated objects instead of being created one at a time, and
+ * all tokens in the arena are recycled or released in a single step once the
+ * documents parsed into it are no longer needed.
+ * <p>
+ * Any number of documents can be parsed into the same arena, for instance
+ * all documents handled by a single request. Elements parsed into an arena
+ * may only be used until the arena is recycled. An arena must not be used
+ * by more than one thread at a time.
+ */
+public final class LazyArena{
+	private static final int DEFAULT_SLAB_SIZE=256;
+
+	private final int slabSize;
+	private LazyNode[][] slabs;
+	private int slabCount;
+	// The slab tokens are currently taken from and the next free token in it
+	private LazyNode[] slab;
+	private int slabIndex;
+	private int slabPosition;
+
+	/**
+	 * Create a new arena with the default slab size.
+	 */
+	public LazyArena(){
+		this(DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * Create a new arena that allocates tokens in slabs of the given size.
+	 *
+	 * @param slabSize the number of tokens allocated at a time
+	 */
+	public LazyArena(int slabSize){
+		if(slabSize<1){
+			throw new IllegalArgumentException("Slab size must be positive");
+		}
+		this.slabSize=slabSize;
+		release();
+	}
+
+	/**
+	 * Make all tokens in the arena available for new documents. The slabs are
+	 * kept, so documents of similar size parsed after this do not allocate
+	 * any tokens. Elements parsed into the arena must no longer be used.
+	 */
+	public void recycle(){
+		slab=null;
+		slabIndex=-1;
+		slabPosition=slabSize;
+	}
+
+	/**
+	 * Drop all slabs held by the arena, so their memory can be reclaimed as
+	 * soon as the elements parsed into the arena are no longer referenced.
+	 */
+	public void release(){
+		slabs=new LazyNode[4][];
+		slabCount=0;
+		recycle();
+	}
+
+	/**
+	 * Returns the number of tokens handed out since the arena was last
+	 * recycled.
+	 *
+	 * @return the number of tokens in use
+	 */
+	public int size(){
+		return slabIndex*slabSize+slabPosition;
+	}
+
+	/**
+	 * Returns the number of tokens allocated by the arena, whether they are
+	 * in use or not.
+	 *
+	 * @return the number of allocated tokens
+	 */
+	public int capacity(){
+		return slabCount*slabSize;
+	}
+
+	/**
+	 * Hand out the next free token, initialized with the given type and
+	 * index into the source.
+	 *
+	 * @param type the type of the token
+	 * @param index the starting index for the token
+	 * @return a token from the arena
+	 */
+	protected LazyNode node(byte type,int index){
+		if(slabPosition==slabSize){
+			nextSlab();
+		}
+		LazyNode token=slab[slabPosition++];
+		token.reset(type,index);
+		return token;
+	}
+
+	/**
+	 * Return all tokens handed out after the arena had the given size.
+	 *
+	 * @param size the number of tokens to keep in use
+	 */
+	protected void truncate(int size){
+		slabIndex=size/slabSize;
+		slabPosition=size%slabSize;
+		// Stay at the end of a full slab rather than at the start of a slab
+		// that might not have been allocated
+		if(slabPosition==0){
+			slabIndex--;
+			slabPosition=slabSize;
+		}
+		slab=slabIndex<0?null:slabs[slabIndex];
+	}
+
+	// Move on to the next slab, allocating it if needed
+	private void nextSlab(){
+		slabIndex++;
+		if(slabIndex==slabCount){
+			if(slabCount==slabs.length){
+				LazyNode[][] newSlabs=new LazyNode[slabCount<<1][];
+				System.arraycopy(slabs,0,newSlabs,0,slabCount);
+				slabs=newSlabs;
+			}
+			LazyNode[] newSlab=new LazyNode[slabSize];
+			for(int i=0;i<slabSize;i++){
+				newSlab[i]=new LazyNode(LazyNode.OBJECT,0);
+			}
+			slabs[slabCount++]=newSlab;
+		}
+		slab=slabs[slabIndex];
+		slabPosition=0;
+	}
+}
@@ -1,5 +1,8 @@
 package me.doubledutch.lazyjson;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * An array used to parse and inspect JSON data given in the form of a string.
  */
@@ -7,6 +10,8 @@ public class LazyArray extends LazyElement{
 	// Stored traversal location for fast in order traversals
 	private LazyNode selectToken=null;
 	private int selectInt=-1;
+	// All children in order, built on the first access that is not in order
+	private LazyNode[] values;
 
 	/**
 	 * Create a new Lazy JSON array based on the JSON representation in the given string.
@@ -15,19 +20,132 @@ public class LazyArray extends LazyElement{
 	 * @throws LazyException if the string could not be parsed as a JSON array
 	 */
 	public LazyArray(String raw) throws LazyException{
-		LazyParser parser=new LazyParser(raw);
-		parser.tokenize();	
+		this(new LazyParser(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation found in
+	 * a section of the given character array. The characters are parsed in
+	 * place, and the indexes of the array point into the full array. They
+	 * must not be modified while this array is in use.
+	 *
+	 * @param raw the input characters
+	 * @param offset the index of the first character to parse
+	 * @param length the number of characters to parse
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(char[] raw,int offset,int length) throws LazyException{
+		this(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given character sequence, such as a StringBuilder or CharBuffer. The
+	 * characters are read in place through the sequence and must not be
+	 * modified while this array is in use.
+	 *
+	 * @param raw the input characters
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(CharSequence raw) throws LazyException{
+		this(new LazyParser(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON
+	 * representation in the given byte array. The data is parsed in place and
+	 * must not be modified while this array is in use.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(byte[] raw) throws LazyException{
+		this(raw,0,raw.length);
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON
+	 * representation found in a section of the given byte array. The data is
+	 * parsed in place and must not be modified while this array is in use.
+	 *
+	 * @param raw the input data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(byte[] raw,int offset,int length) throws LazyException{
+		this(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON
+	 * representation between the position and limit of the given buffer. The
+	 * data is parsed in place and must not be modified while this array is
+	 * in use.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(ByteBuffer raw) throws LazyException{
+		this(new LazyParser(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the
+	 * given string, using the given pool to tokenize ranges of the array in
+	 * parallel. This is intended for very large arrays with many elements,
+	 * small arrays are tokenized on the calling thread.
+	 *
+	 * @param raw the input string
+	 * @param pool the pool to run the tokenizer on
+	 * @throws LazyException if the string could not be parsed as a JSON array
+	 */
+	public LazyArray(String raw,ForkJoinPool pool) throws LazyException{
+		this(new LazyParser(raw),pool);
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON
+	 * representation between the position and limit of the given buffer,
+	 * using the given pool to tokenize ranges of the array in parallel. This
+	 * is intended for very large arrays with many elements, small arrays are
+	 * tokenized on the calling thread. The data is parsed in place and must
+	 * not be modified while this array is in use.
+	 *
+	 * @param raw the input data
+	 * @param pool the pool to run the tokenizer on
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(ByteBuffer raw,ForkJoinPool pool) throws LazyException{
+		this(new LazyParser(raw),pool);
+	}
+
+	private LazyArray(LazyParser parser,ForkJoinPool pool) throws LazyException{
+		parser.tokenizeParallel(pool);
+		if(parser.root.type!=LazyNode.ARRAY){
+			throw new LazyException("JSON Array must start with [",parser.root.startIndex);
+		}
+		root=parser.root;
+		source=parser.source;
+	}
+
+	private LazyArray(LazyParser parser) throws LazyException{
+		parser.tokenize();
 		if(parser.root.type!=LazyNode.ARRAY){
-			throw new LazyException("JSON Array must start with [",0);
+			throw new LazyException("JSON Array must start with [",parser.root.startIndex);
 		}
 		root=parser.root;
-		cbuf=parser.cbuf;
+		source=parser.source;
 	}
 
 	protected LazyArray(LazyNode root,char[] source){
 		super(root,source);
 	}
 
+	protected LazyArray(LazyNode root,LazySource source){
+		super(root,source);
+	}
+
 	/**
 	 * Returns the JSON array stored at the given index.
 	 *
@@ -38,7 +156,7 @@ public class LazyArray extends LazyElement{
 	public LazyArray getJSONArray(int index) throws LazyException{
 		LazyNode token=getValueToken(index);
 		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
-		return new LazyArray(token,cbuf);
+		return new LazyArray(token,source);
 	}
 
 	/**
@@ -53,7 +171,7 @@ public class LazyArray extends LazyElement{
 		if(token==null)return null;
 		if(token.type==LazyNode.VALUE_NULL)return null;
 		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
-		return new LazyArray(token,cbuf);
+		return new LazyArray(token,source);
 	}
 
 	/**
@@ -66,7 +184,7 @@ public class LazyArray extends LazyElement{
 	public LazyObject getJSONObject(int index) throws LazyException{
 		LazyNode token=getValueToken(index);
 		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
-		return new LazyObject(token,cbuf);
+		return new LazyObject(token,source);
 	}
 
 	/**
@@ -81,7 +199,7 @@ public class LazyArray extends LazyElement{
 		if(token==null)return null;
 		if(token.type==LazyNode.VALUE_NULL)return null;
 		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
-		return new LazyObject(token,cbuf);
+		return new LazyObject(token,source);
 	}
 
 	/**
@@ -140,7 +258,7 @@ public class LazyArray extends LazyElement{
 	 */
 	public String getString(int index) throws LazyException{
 		LazyNode token=getValueToken(index);
-		return token.getStringValue(cbuf);
+		return token.getStringValue(source);
 	}
 
 	/**
@@ -154,7 +272,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return null;
 		if(token.type==LazyNode.VALUE_NULL)return null;
-		return token.getStringValue(cbuf);
+		return token.getStringValue(source);
 	}
 
 	/**
@@ -169,7 +287,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getStringValue(cbuf);
+		return token.getStringValue(source);
 	}
 
 	/**
@@ -181,7 +299,7 @@ public class LazyArray extends LazyElement{
 	 */
 	public int getInt(int index) throws LazyException{
 		LazyNode token=getValueToken(index);
-		return token.getIntValue(cbuf);
+		return token.getIntValue(source);
 	}
 
 	/**
@@ -195,7 +313,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return 0;
 		if(token.type==LazyNode.VALUE_NULL)return 0;
-		return token.getIntValue(cbuf);
+		return token.getIntValue(source);
 	}
 
 	/**
@@ -210,7 +328,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getIntValue(cbuf);
+		return token.getIntValue(source);
 	}
 
 	/**
@@ -222,7 +340,7 @@ public class LazyArray extends LazyElement{
 	 */
 	public long getLong(int index) throws LazyException{
 		LazyNode token=getValueToken(index);
-		return token.getLongValue(cbuf);
+		return token.getLongValue(source);
 	}
 
 	/**
@@ -236,7 +354,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return 0l;
 		if(token.type==LazyNode.VALUE_NULL)return 0l;
-		return token.getLongValue(cbuf);
+		return token.getLongValue(source);
 	}
 
 	/**
@@ -251,7 +369,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getLongValue(cbuf);
+		return token.getLongValue(source);
 	}
 
 	/**
@@ -263,7 +381,7 @@ public class LazyArray extends LazyElement{
 	 */
 	public double getDouble(int index) throws LazyException{
 		LazyNode token=getValueToken(index);
-		return token.getDoubleValue(cbuf);
+		return token.getDoubleValue(source);
 	}
 
 	/**
@@ -277,7 +395,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return 0.0;
 		if(token.type==LazyNode.VALUE_NULL)return 0.0;
-		return token.getDoubleValue(cbuf);
+		return token.getDoubleValue(source);
 	}
 
 	/**
@@ -292,7 +410,7 @@ public class LazyArray extends LazyElement{
 		LazyNode token=getOptionalValueToken(index);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getDoubleValue(cbuf);
+		return token.getDoubleValue(source);
 	}
 
 	/**
@@ -313,37 +431,16 @@ public class LazyArray extends LazyElement{
 	 * the array itself. This method finds the correct child for a given index
 	 * and returns it.
 	 *
-	 * Since children are stored as a linked list, this method is likely to be
-	 * a serious O(n) performance bottleneck for array access. To improve this
-	 * for the most common case, we maintain a traversal index and pointer into
-	 * the children - meaning that if you traverse the array from the beginning
-	 * the complexity will be O(1) for each access request instead.
-	 *
 	 * @param index the location of the desired value
 	 * @return the child for the given index
 	 * @throws LazyException if the index is out of bounds
 	 */
 	private LazyNode getValueToken(int index) throws LazyException{
-		if(index<0)throw new LazyException("Array undex can not be negative");
-		int num=0;
-		LazyNode child=root.child;
-		// If the value we are looking for is past our previous traversal point
-		// continue at the previous point
-		if(selectInt>-1 && index>=selectInt){
-			num=selectInt;
-			child=selectToken;
+		LazyNode child=getOptionalValueToken(index);
+		if(child==null){
+			throw new LazyException("Array index out of bounds "+index);
 		}
-		while(child!=null){
-			if(num==index){
-				// Store the traversal point and return the current token
-				selectInt=index;
-				selectToken=child;
-				return child;
-			}
-			num++;
-			child=child.next;
-		}
-		throw new LazyException("Array index out of bounds "+index);
+		return child;
 	}
 
 	/**
@@ -355,14 +452,22 @@ public class LazyArray extends LazyElement{
 	 * a serious O(n) performance bottleneck for array access. To improve this
 	 * for the most common case, we maintain a traversal index and pointer into
 	 * the children - meaning that if you traverse the array from the beginning
-	 * the complexity will be O(1) for each access request instead.
+	 * the complexity will be O(1) for each access request instead. The first
+	 * time any other index is requested, all children are put in an array
+	 * which is used for every access from then on.
 	 *
 	 * @param index the location of the desired value
 	 * @return the child for the given index or null if the index does not exist
-	 * @throws LazyException if the index is out of bounds
+	 * @throws LazyException if the index is negative
 	 */
 	private LazyNode getOptionalValueToken(int index) throws LazyException{
 		if(index<0)throw new LazyException("Array undex can not be negative");
+		if(values==null && index!=selectInt && index!=selectInt+1){
+			buildValues();
+		}
+		if(values!=null){
+			return index<values.length?values[index]:null;
+		}
 		int num=0;
 		LazyNode child=root.child;
 		// If the value we are looking for is past our previous traversal point
@@ -384,6 +489,16 @@ public class LazyArray extends LazyElement{
 		return null;
 	}
 
+	// Put all children in an array for random access
+	private void buildValues(){
+		LazyNode[] table=new LazyNode[length()];
+		int i=0;
+		for(LazyNode child=root.child;child!=null;child=child.next){
+			table[i++]=child;
+		}
+		values=table;
+	}
+
 	/**
 	 * Utility method to get the string value of a specific token
 	 *
@@ -391,7 +506,7 @@ public class LazyArray extends LazyElement{
 	 * @return the string value of the given token
 	 */
 	// private String getString(LazyNode token){
-	//	return token.getStringValue(cbuf);
+	//	return token.getStringValue(source);
 	// }
 
 	/*
@@ -1,19 +1,29 @@
 package me.doubledutch.lazyjson;
 
 import me.doubledutch.lazyjson.compressor.*;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.BufferOverflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
 
 public class LazyElement{
 	protected LazyNode root;
-	protected char[] cbuf;
-
-	// Cache value for length
-	private int length=-1;
+	protected LazySource source;
 
 	protected LazyElement(LazyNode root,char[] source){
 		this.root=root;
-		this.cbuf=source;
+		this.source=new LazySource(source);
+	}
+
+	protected LazyElement(LazyNode root,LazySource source){
+		root.expand(source);
+		this.root=root;
+		this.source=source.of(root);
 	}
 
 	protected LazyElement() throws LazyException{
@@ -21,18 +31,18 @@ public class LazyElement{
 	}
 
 	protected char[] getCharBuffer(){
-		return cbuf;
+		return source.cbuf;
 	}
 
 	public Template extractTemplate(){
 		Template t=new Template();
-		root.addSegments(cbuf,t);
+		root.addSegments(source,t);
 		t.compact();
 		return t;
 	}
 
 	public void writeTemplateValues(ByteBuffer buf,DictionaryCache dict) throws BufferOverflowException{
-		root.writeSegmentValues(cbuf,buf,dict);
+		root.writeSegmentValues(source,buf,dict);
 	}
 
 	/**
@@ -50,6 +60,415 @@ public class LazyElement{
 		}
 	}
 
+	/**
+	 * Parses a section of a character array in place and returns either a
+	 * LazyObject or LazyArray. The indexes of the returned element point into
+	 * the full array.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first character to parse
+	 * @param length the number of characters to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(char[] raw,int offset,int length) throws LazyException{
+		return parse(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Parses a character sequence in place and returns either a LazyObject or
+	 * LazyArray. The characters are read through the sequence whenever
+	 * values are requested, so it must not be modified while the returned
+	 * element is in use.
+	 *
+	 * @param raw the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(CharSequence raw) throws LazyException{
+		return parse(new LazyParser(raw));
+	}
+
+	/**
+	 * Parses UTF-8 encoded data and returns either a LazyObject or LazyArray
+	 *
+	 * @param raw the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(byte[] raw) throws LazyException{
+		return parse(new LazyParser(raw,0,raw.length));
+	}
+
+	/**
+	 * Parses a section of UTF-8 encoded data and returns either a LazyObject
+	 * or LazyArray
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(byte[] raw,int offset,int length) throws LazyException{
+		return parse(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of a
+	 * buffer and returns either a LazyObject or LazyArray
+	 *
+	 * @param raw the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(ByteBuffer raw) throws LazyException{
+		return parse(new LazyParser(raw));
+	}
+
+	/**
+	 * Parses a string and returns either a LazyObject or LazyArray, taking
+	 * the tokens for the document from the given arena. The returned element
+	 * may only be used until the arena is recycled.
+	 *
+	 * @param str the source json data
+	 * @param arena the arena to take tokens from
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the string could not be parsed
+	 */
+	public static LazyElement parse(String str,LazyArena arena) throws LazyException{
+		return parse(new LazyParser(str),arena);
+	}
+
+	/**
+	 * Parses a section of UTF-8 encoded data and returns either a LazyObject
+	 * or LazyArray, taking the tokens for the document from the given arena.
+	 * The returned element may only be used until the arena is recycled.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @param arena the arena to take tokens from
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(byte[] raw,int offset,int length,LazyArena arena) throws LazyException{
+		return parse(new LazyParser(raw,offset,length),arena);
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of a
+	 * buffer and returns either a LazyObject or LazyArray, taking the tokens
+	 * for the document from the given arena. The returned element may only
+	 * be used until the arena is recycled.
+	 *
+	 * @param raw the source json data
+	 * @param arena the arena to take tokens from
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(ByteBuffer raw,LazyArena arena) throws LazyException{
+		return parse(new LazyParser(raw),arena);
+	}
+
+	/**
+	 * Memory maps a file containing UTF-8 encoded data and parses it in place.
+	 * Values are read straight from the mapping when requested, so the file
+	 * contents are never copied onto the heap.
+	 *
+	 * @param file the file containing the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws IOException if the file could not be read
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(Path file) throws IOException,LazyException{
+		// The mapping stays valid after the channel has been closed
+		FileChannel channel=FileChannel.open(file,StandardOpenOption.READ);
+		try{
+			return parse(channel);
+		}finally{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Memory maps the full contents of a channel containing UTF-8 encoded
+	 * data and parses it in place. Values are read straight from the mapping
+	 * when requested, so the file contents are never copied onto the heap.
+	 * <p>
+	 * Files larger than 2 GB are mapped in several segments. An object or
+	 * array that does not fit in a single segment can be read as usual,
+	 * but not turned back into a string or a byte array, and a decode cache
+	 * or key pool set on it is only used for the part of it in the segment
+	 * it starts in. A single string value must fit in a segment.
+	 *
+	 * @param channel the channel containing the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws IOException if the channel could not be mapped
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(FileChannel channel) throws IOException,LazyException{
+		return parse(channel,Integer.MAX_VALUE);
+	}
+
+	// Parse a channel mapped in segments of at most the given size. Only
+	// tests use a size other than the largest a single mapping can have.
+	static LazyElement parse(FileChannel channel,int segmentSize) throws IOException,LazyException{
+		long size=channel.size();
+		if(size<=segmentSize){
+			return parse(new LazyParser(channel.map(FileChannel.MapMode.READ_ONLY,0,size)));
+		}
+		LazySegmentParser parser=new LazySegmentParser(channel,segmentSize);
+		LazyNode root=parser.parse();
+		if(root.type==LazyNode.ARRAY){
+			return new LazyArray(root,parser.getRootSource());
+		}
+		return new LazyObject(root,parser.getRootSource());
+	}
+
+	/**
+	 * Parses a string holding a sequence of newline separated JSON documents,
+	 * such as JSON Lines or NDJSON data. All documents are parsed in a single
+	 * pass and share the same source data.
+	 *
+	 * @param str the source json data
+	 * @return a list of LazyObject or LazyArray instances in source order
+	 * @throws LazyException if any of the documents could not be parsed
+	 */
+	public static List<LazyElement> parseLines(String str) throws LazyException{
+		return parseLines(new LazyParser(str));
+	}
+
+	/**
+	 * Parses a section of UTF-8 encoded data holding a sequence of newline
+	 * separated JSON documents, such as JSON Lines or NDJSON data. All
+	 * documents are parsed in a single pass and share the same source data.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @return a list of LazyObject or LazyArray instances in source order
+	 * @throws LazyException if any of the documents could not be parsed
+	 */
+	public static List<LazyElement> parseLines(byte[] raw,int offset,int length) throws LazyException{
+		return parseLines(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of a
+	 * buffer holding a sequence of newline separated JSON documents, such as
+	 * JSON Lines or NDJSON data. All documents are parsed in a single pass
+	 * and share the same source data.
+	 *
+	 * @param raw the source json data
+	 * @return a list of LazyObject or LazyArray instances in source order
+	 * @throws LazyException if any of the documents could not be parsed
+	 */
+	public static List<LazyElement> parseLines(ByteBuffer raw) throws LazyException{
+		return parseLines(new LazyParser(raw));
+	}
+
+	private static List<LazyElement> parseLines(LazyParser parser) throws LazyException{
+		return new ElementList(parser.tokenizeLines(),parser.source);
+	}
+
+	// Internal list that only holds the root node of each document and
+	// creates the LazyObject and LazyArray views when they are requested
+	private static final class ElementList extends AbstractList<LazyElement> implements RandomAccess{
+		private final List<LazyNode> roots;
+		private final LazySource source;
+
+		protected ElementList(List<LazyNode> roots,LazySource source){
+			this.roots=roots;
+			this.source=source;
+		}
+
+		public LazyElement get(int index){
+			LazyNode node=roots.get(index);
+			if(node.type==LazyNode.ARRAY){
+				return new LazyArray(node,source);
+			}
+			return new LazyObject(node,source);
+		}
+
+		public int size(){
+			return roots.size();
+		}
+	}
+
+	/**
+	 * Parses a string into a compact tape and returns either a LazyObject or
+	 * LazyArray. All tokens are stored in a single int array instead of one
+	 * object per token, and objects for the tokens are only created as the
+	 * parts of the document holding them are visited. This reduces the heap
+	 * used by large documents of which only a few values are read.
+	 *
+	 * @param str the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the string could not be parsed
+	 */
+	public static LazyElement parseTape(String str) throws LazyException{
+		return parseTape(new LazyParser(str));
+	}
+
+	/**
+	 * Parses a section of UTF-8 encoded data into a compact tape and returns
+	 * either a LazyObject or LazyArray. See parseTape(String) for details.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parseTape(byte[] raw,int offset,int length) throws LazyException{
+		return parseTape(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of a
+	 * buffer into a compact tape and returns either a LazyObject or
+	 * LazyArray. See parseTape(String) for details.
+	 *
+	 * @param raw the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parseTape(ByteBuffer raw) throws LazyException{
+		return parseTape(new LazyParser(raw));
+	}
+
+	private static LazyElement parse(LazyParser parser,LazyArena arena) throws LazyException{
+		int size=arena.size();
+		parser.arena=arena;
+		try{
+			return parse(parser);
+		}catch(LazyException e){
+			// Hand the tokens of the broken document back to the arena
+			arena.truncate(size);
+			throw e;
+		}
+	}
+
+	/**
+	 * Parses a string and returns either a LazyObject or LazyArray holding
+	 * only the fields selected by the given projection. Fields that no path
+	 * of the projection can reach are skipped without being tokenized, and
+	 * appear to be missing from the returned element. Skipped values are
+	 * only checked for balanced brackets and terminated strings.
+	 *
+	 * @param str the source json data
+	 * @param projection the fields to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the string could not be parsed
+	 */
+	public static LazyElement parse(String str,LazyProjection projection) throws LazyException{
+		return parse(new LazyParser(str),projection);
+	}
+
+	/**
+	 * Parses a section of UTF-8 encoded data and returns either a LazyObject
+	 * or LazyArray holding only the fields selected by the given projection.
+	 * See parse(String,LazyProjection) for details.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @param projection the fields to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(byte[] raw,int offset,int length,LazyProjection projection) throws LazyException{
+		return parse(new LazyParser(raw,offset,length),projection);
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of a
+	 * buffer and returns either a LazyObject or LazyArray holding only the
+	 * fields selected by the given projection. See
+	 * parse(String,LazyProjection) for details.
+	 *
+	 * @param raw the source json data
+	 * @param projection the fields to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(ByteBuffer raw,LazyProjection projection) throws LazyException{
+		return parse(new LazyParser(raw),projection);
+	}
+
+	private static LazyElement parse(LazyParser parser,LazyProjection projection) throws LazyException{
+		parser.projection=projection;
+		return parse(parser);
+	}
+
+	/**
+	 * Parses a string and returns either a LazyObject or LazyArray, deferring
+	 * the work on nested objects and arrays. During the initial parse they
+	 * are only matched up to their closing bracket and skipped. They are
+	 * tokenized the first time they are retrieved, so the cost of parsing
+	 * follows the parts of the document that are actually read. Note that
+	 * the content of a nested object or array is not validated until then,
+	 * and a LazyException is thrown when retrieving it if it is malformed.
+	 *
+	 * @param str the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the string could not be parsed
+	 */
+	public static LazyElement parseDeferred(String str) throws LazyException{
+		return parseDeferred(new LazyParser(str));
+	}
+
+	/**
+	 * Parses a section of UTF-8 encoded data and returns either a LazyObject
+	 * or LazyArray, deferring the work on nested objects and arrays. See
+	 * parseDeferred(String) for details.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parseDeferred(byte[] raw,int offset,int length) throws LazyException{
+		return parseDeferred(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of a
+	 * buffer and returns either a LazyObject or LazyArray, deferring the work
+	 * on nested objects and arrays. See parseDeferred(String) for details.
+	 *
+	 * @param raw the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parseDeferred(ByteBuffer raw) throws LazyException{
+		return parseDeferred(new LazyParser(raw));
+	}
+
+	private static LazyElement parseDeferred(LazyParser parser) throws LazyException{
+		parser.deferred=true;
+		return parse(parser);
+	}
+
+	private static LazyElement parseTape(LazyParser parser) throws LazyException{
+		parser.tokenizeTape();
+		return wrap(parser);
+	}
+
+	private static LazyElement parse(LazyParser parser) throws LazyException{
+		parser.tokenize();
+		return wrap(parser);
+	}
+
+	private static LazyElement wrap(LazyParser parser){
+		if(parser.root.type==LazyNode.ARRAY){
+			return new LazyArray(parser.root,parser.source);
+		}
+		return new LazyObject(parser.root,parser.source);
+	}
+
 	public static LazyElement readFromTemplate(Template t,ByteBuffer buf,DictionaryCache dict) throws LazyException{
 		String str=t.read(buf,dict);
 		// System.out.println(str);
@@ -62,14 +481,44 @@ public class LazyElement{
 	 * @return the number of fields
 	 */
 	public int length(){
-		if(root.child==null){
-			return 0;
-		}
-		if(length>-1){
-			return length;
-		}
-		length=root.getChildCount();
-		return length;
+		return root.getChildCount();
+	}
+
+	/**
+	 * Keep string values once they have been decoded, so reading the same
+	 * value again does not decode it from the source again. The values are
+	 * kept for the whole document this element was parsed from, including
+	 * all objects and arrays read from it.
+	 * <p>
+	 * At most the largest power of two not exceeding the given number of
+	 * values is kept. Each value has a fixed slot, and a value decoded into
+	 * an occupied slot replaces the value held there.
+	 *
+	 * @param size the maximum number of decoded values to keep
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public void enableDecodeCache(int size){
+		source.enableDecodeCache(size);
+	}
+
+	/**
+	 * Stop keeping decoded string values for the document this element was
+	 * parsed from, dropping any values kept so far.
+	 */
+	public void disableDecodeCache(){
+		source.decoded=null;
+	}
+
+	/**
+	 * Take field names from the given pool instead of creating a new string
+	 * every time a name is read. The pool is used for the whole document
+	 * this element was parsed from, including all objects and arrays read
+	 * from it.
+	 *
+	 * @param pool the pool to use, or null to stop using a pool
+	 */
+	public void setKeyPool(LazyKeyPool pool){
+		source.keyPool=pool;
 	}
 
 	/**
@@ -79,7 +528,8 @@ public class LazyElement{
 	 * @return as string representation of this object as given in the source string
 	 */
 	public String toString(){
-		return new String(cbuf,root.startIndex,root.endIndex-root.startIndex);
+		checkSize();
+		return source.getString(root.startIndex,root.endIndex);
 	}
 
 	/**
@@ -88,13 +538,23 @@ public class LazyElement{
 	 * @return the length of the source string for this element
 	 */
 	public int getSourceLength(){
+		checkSize();
 		return root.endIndex-root.startIndex;
 	}
 
 	public byte[] toByteArray(){
-		int size=root.getBufferSize();
+		checkSize();
+		int size=root.getBufferSize(source);
 		ByteBuffer buf=ByteBuffer.allocate(size);
-		root.writeToBuffer(buf);
+		root.writeToBuffer(source,buf);
 		return buf.array();
 	}
-}
\ No newline at end of file
+
+	// An object or array spanning several segments of a large file has no
+	// end index in the segment it starts in
+	private void checkSize() throws LazyException{
+		if(root.endIndex==-1){
+			throw new LazyException("Element does not fit in a single segment",root);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A field name prepared for repeated lookups. The characters, the UTF-8
+ * encoding and the hashes of the name are computed once when the key is
+ * created, instead of on every lookup. Keys are immutable and can be kept
+ * in constants and shared between threads.
+ */
+public final class LazyKey{
+	protected final String name;
+	protected final char[] chars;
+	protected final byte[] bytes;
+	// The hash of the name as found in character and in byte sources
+	protected final int charHash;
+	protected final int byteHash;
+
+	/**
+	 * Create a new key for the given field name.
+	 *
+	 * @param name the name of the field
+	 */
+	public LazyKey(String name){
+		this.name=name;
+		chars=name.toCharArray();
+		bytes=name.getBytes(StandardCharsets.UTF_8);
+		charHash=name.hashCode();
+		int h=0;
+		for(byte b:bytes){
+			h=31*h+(b&0xFF);
+		}
+		byteHash=h;
+	}
+
+	/**
+	 * Returns the field name of this key.
+	 *
+	 * @return the field name
+	 */
+	public String toString(){
+		return name;
+	}
+}
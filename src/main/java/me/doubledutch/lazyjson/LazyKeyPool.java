@@ -0,0 +1,77 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * A pool of field names shared across documents. When a document uses a
+ * pool, field names are looked up in the pool straight from the source
+ * data, and the same String instance is returned every time a name is
+ * found. Documents with a stable schema then stop allocating strings for
+ * their field names altogether.
+ * <p>
+ * The pool has a fixed number of slots, each holding at most one name, so
+ * it never grows. A name that is not found replaces the name held in its
+ * slot. A pool can be shared by any number of threads without locking, at
+ * worst a name found by one thread is replaced by another.
+ */
+public final class LazyKeyPool{
+	private static final int DEFAULT_SIZE=4096;
+	// Longer names are not worth keeping
+	private static final int MAX_KEY_LENGTH=128;
+
+	private final String[] keys;
+	private final int mask;
+
+	/**
+	 * Create a new pool with the default number of slots.
+	 */
+	public LazyKeyPool(){
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a new pool holding at most the largest power of two not
+	 * exceeding the given number of names.
+	 *
+	 * @param size the maximum number of names to keep
+	 */
+	public LazyKeyPool(int size){
+		if(size<1){
+			throw new IllegalArgumentException("Pool size must be positive");
+		}
+		keys=new String[Integer.highestOneBit(size)];
+		mask=keys.length-1;
+	}
+
+	/**
+	 * Returns the number of names the pool can hold.
+	 *
+	 * @return the number of slots in the pool
+	 */
+	public int capacity(){
+		return keys.length;
+	}
+
+	/**
+	 * Returns the pooled string for the raw characters between the two
+	 * indexes, adding it to the pool if it is not there yet.
+	 *
+	 * @param source the source data for the name
+	 * @param startIndex the first index of the name
+	 * @param endIndex the index after the last index of the name
+	 * @return the name as a string
+	 */
+	protected String get(LazySource source,int startIndex,int endIndex){
+		if(endIndex-startIndex>MAX_KEY_LENGTH){
+			return source.getString(startIndex,endIndex);
+		}
+		int h=source.hash(startIndex,endIndex);
+		// Spread the bits of the hash so similar names use different slots
+		int slot=(h^(h>>>16))&mask;
+		String key=keys[slot];
+		if(key!=null && source.matches(key,startIndex,endIndex)){
+			return key;
+		}
+		key=source.getString(startIndex,endIndex);
+		keys[slot]=key;
+		return key;
+	}
+}
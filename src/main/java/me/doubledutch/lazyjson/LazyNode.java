@@ -32,7 +32,7 @@ public final class LazyNode{
 	// Start and end index into source string for this token.
 	// For an object or array, the end index will be the end of the entire
 	// object or array.
-	protected final int startIndex;
+	protected int startIndex;
 	protected int endIndex=-1;
 
 	// Children are stored as a linked list by maintaining the first and last
@@ -40,6 +40,30 @@ public final class LazyNode{
 	protected LazyNode child;
 	protected LazyNode lastChild;
 	protected LazyNode next;
+	// The number of children in the list, kept up to date as they are added
+	protected int childCount;
+
+	// For a container read from a tape, the offset of its entry until the
+	// child nodes have been built from the tape. For a container that was
+	// skipped while parsing, DEFERRED until it has been tokenized.
+	protected static final int EXPANDED=-1;
+	protected static final int DEFERRED=-2;
+	protected int pending=EXPANDED;
+
+	// The width needed to hold the value of an integer token, and the value
+	// itself if it fits in a long. Integer tokens that were not classified
+	// while parsing are classified from the source on first access. Float
+	// tokens keep the bits of their double value once it has been read.
+	// String tokens with escaped characters keep how many characters shorter
+	// than their raw data the string is once it has been unescaped, and for
+	// UTF-8 data decoded, or zero if that is unknown.
+	protected static final byte NUMBER_UNKNOWN=0;
+	protected static final byte NUMBER_INT=1;
+	protected static final byte NUMBER_LONG=2;
+	protected static final byte NUMBER_BIG=3;
+	protected static final byte NUMBER_DOUBLE=4;
+	protected byte numberClass=NUMBER_UNKNOWN;
+	protected long number;
 
 	/**
 	 * Construct a new LazyNode with the given type and index into the source string
@@ -52,12 +76,32 @@ public final class LazyNode{
 		this.type=type;
 	}
 
+	/**
+	 * Reinitialize this token so it can be reused for a new document.
+	 *
+	 * @param type the type of this token
+	 * @param startIndex the index into the source string where this token was found
+	 */
+	protected void reset(byte type,int startIndex){
+		this.type=type;
+		this.startIndex=startIndex;
+		endIndex=-1;
+		child=null;
+		lastChild=null;
+		next=null;
+		childCount=0;
+		pending=EXPANDED;
+		numberClass=NUMBER_UNKNOWN;
+		number=0;
+	}
+
 	/**
 	 * Add a new child to the current linked list of child tokens
 	 *
 	 * @param token the child to add
 	 */
 	protected void addChild(LazyNode token){
+		childCount++;
 		// If no children have been added yet, lastChild will be null
 		if(lastChild==null){
 			child=token;
@@ -70,21 +114,71 @@ public final class LazyNode{
 	}
 
 	/**
-	 * Count the children attached to this token. Be aware that this requires actual linked list traversal!
+	 * Build the child nodes of this token from the tape of the source, or by
+	 * tokenizing its part of the source if it was deferred, if that has not
+	 * been done yet. Nested containers are left pending until they are
+	 * expanded themselves, so nodes are only created for the parts of a
+	 * document that are actually visited.
 	 *
-	 * @return the number of child tokens attached to this token
+	 * @param source the source data for this token
+	 * @throws LazyException if a deferred container could not be parsed
 	 */
-	protected int getChildCount(){
-		if(child==null){
-			return 0;
+	protected void expand(LazySource source) throws LazyException{
+		source=source.of(this);
+		if(pending==EXPANDED){
+			return;
+		}
+		if(pending==DEFERRED){
+			LazyParser parser=new LazyParser(source,startIndex,endIndex);
+			parser.deferred=true;
+			parser.tokenize();
+			child=parser.root.child;
+			lastChild=parser.root.lastChild;
+			childCount=parser.root.childCount;
+			pending=EXPANDED;
+			return;
+		}
+		int[] tape=source.tape;
+		int end=tape[pending+LazySource.TAPE_AFTER];
+		int entry=pending+LazySource.TAPE_ENTRY;
+		while(entry<end){
+			LazyNode token=fromTape(tape,entry);
+			if(token.type==FIELD){
+				token.addChild(fromTape(tape,entry+LazySource.TAPE_ENTRY));
+			}
+			addChild(token);
+			entry=token.type==VALUE_ESTRING?entry+LazySource.TAPE_ENTRY:tape[entry+LazySource.TAPE_AFTER];
 		}
-		int num=0;
-		LazyNode token=child;
-		while(token!=null){
-			num++;
-			token=token.next;
+		pending=EXPANDED;
+	}
+
+	/**
+	 * Create a token from an entry on a tape. The children of a container
+	 * are left pending on the tape.
+	 *
+	 * @param tape the tape holding the entry
+	 * @param entry the offset of the entry on the tape
+	 * @return a new token
+	 */
+	protected static LazyNode fromTape(int[] tape,int entry){
+		LazyNode token=new LazyNode((byte)tape[entry+LazySource.TAPE_TYPE],tape[entry+LazySource.TAPE_START]);
+		token.endIndex=tape[entry+LazySource.TAPE_END];
+		if(token.type==VALUE_ESTRING){
+			token.number=tape[entry+LazySource.TAPE_AFTER];
+		}else if(tape[entry+LazySource.TAPE_AFTER]>entry+LazySource.TAPE_ENTRY && (token.type==OBJECT || token.type==ARRAY)){
+			token.pending=entry;
 		}
-		return num;
+		return token;
+	}
+
+	/**
+	 * Returns the number of children attached to this token. The count is
+	 * kept as children are added, so this does not traverse the list.
+	 *
+	 * @return the number of child tokens attached to this token
+	 */
+	protected int getChildCount(){
+		return childCount;
 	}
 
 	/**
@@ -176,70 +270,107 @@ public final class LazyNode{
 	}
 
 	/**
-	 * Parses the characters of this token and attempts to construct an integer
-	 * value from them.
+	 * Returns the integer value of this token.
 	 *
-	 * @param source the source character array for this token
+	 * @param source the source data for this token
 	 * @return the integer value if it could be parsed
-	 * @throws LazyException if the value could not be parsed
+	 * @throws LazyException if the value is not an integer or does not fit in an int
 	 */
-	protected int getIntValue(char[] source) throws LazyException{
+	protected int getIntValue(LazySource source) throws LazyException{
+		source=source.of(this);
 		if(type!=VALUE_INTEGER)throw new LazyException("Not an integer",startIndex);
-		int i=startIndex;
-		boolean sign=false;
-		if(source[i]=='-'){
-			sign=true;
-			i++;
-		}
-		int value=0;
-		for(;i<endIndex;i++){
-			char c=source[i];
-			// If we only allow this to be called on integer values, the parsing is pre done!
-			// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-			value+='0'-c;
-			if(i+1<endIndex){
-				value*=10;
-			}
-		}
-		return sign?value:-value;
+		if(getNumberClass(source)!=NUMBER_INT)throw new LazyException("Integer value out of range",startIndex);
+		return (int)number;
 	}
 
 	/**
-	 * Parses the characters of this token and attempts to construct a long
-	 * value from them.
+	 * Returns the long value of this token.
 	 *
-	 * @param source the source character array for this token
+	 * @param source the source data for this token
 	 * @return the long value if it could be parsed
-	 * @throws LazyException if the value could not be parsed
+	 * @throws LazyException if the value is not an integer or does not fit in a long
 	 */
-	protected long getLongValue(char[] source) throws LazyException{
+	protected long getLongValue(LazySource source) throws LazyException{
+		source=source.of(this);
 		if(type!=VALUE_INTEGER)throw new LazyException("Not a long",startIndex);
+		if(getNumberClass(source)==NUMBER_BIG)throw new LazyException("Long value out of range",startIndex);
+		return number;
+	}
+
+	/**
+	 * Returns how wide a type is needed to hold the value of this integer
+	 * token.
+	 *
+	 * @param source the source data for this token
+	 * @return one of NUMBER_INT, NUMBER_LONG or NUMBER_BIG
+	 */
+	protected byte getNumberClass(LazySource source){
+		source=source.of(this);
+		if(numberClass==NUMBER_UNKNOWN){
+			classifyNumber(source);
+		}
+		return numberClass;
+	}
+
+	/**
+	 * Parses the characters of this integer token to find out how wide a
+	 * type is needed to hold it, storing the value if it fits in a long.
+	 *
+	 * @param source the source data for this token
+	 */
+	protected void classifyNumber(LazySource source){
+		source=source.of(this);
 		int i=startIndex;
 		boolean sign=false;
-		if(source[i]=='-'){
+		if(source.charAt(i)=='-'){
 			sign=true;
 			i++;
 		}
+		// Accumulate the negative value, which has the larger range
 		long value=0;
 		for(;i<endIndex;i++){
-			char c=source[i];
-			value+='0'-c;
-			if(i+1<endIndex){
-				value*=10;
+			int digit=source.charAt(i)-'0';
+			if(value<Long.MIN_VALUE/10 || (value==Long.MIN_VALUE/10 && digit>8)){
+				numberClass=NUMBER_BIG;
+				return;
 			}
+			value=value*10-digit;
 		}
-		return sign?value:-value;
+		if(!sign){
+			if(value==Long.MIN_VALUE){
+				numberClass=NUMBER_BIG;
+				return;
+			}
+			value=-value;
+		}
+		number=value;
+		numberClass=(value>=Integer.MIN_VALUE && value<=Integer.MAX_VALUE)?NUMBER_INT:NUMBER_LONG;
 	}
 
 	/**
 	 * Parses the characters of this token and attempts to construct a double
 	 * value from them.
 	 *
-	 * @param source the source character array for this token
+	 * @param source the source data for this token
 	 * @return the double value if it could be parsed
 	 * @throws LazyException if the value could not be parsed
 	 */
-	protected double getDoubleValue(char[] source) throws LazyException{
+	protected double getDoubleValue(LazySource source) throws LazyException{
+		source=source.of(this);
+		if(type==VALUE_INTEGER && getNumberClass(source)!=NUMBER_BIG){
+			return (double)number;
+		}
+		if(type==VALUE_FLOAT){
+			if(numberClass!=NUMBER_DOUBLE){
+				// The format was validated while parsing
+				number=Double.doubleToRawLongBits(DoubleParser.parse(source,startIndex,endIndex));
+				numberClass=NUMBER_DOUBLE;
+			}
+			return Double.longBitsToDouble(number);
+		}
+		if(type==VALUE_INTEGER){
+			return DoubleParser.parse(source,startIndex,endIndex);
+		}
 		double d=0.0;
 		String str=getStringValue(source);
 		try{
@@ -254,60 +385,284 @@ public final class LazyNode{
 	/**
 	 * Extracts a string containing the characters given by this token. If the
 	 * token was marked as having escaped characters, they will be unescaped
-	 * before the value is returned.
+	 * before the value is returned. If the source keeps decoded values, the
+	 * value is only decoded the first time. Field names are taken from the
+	 * key pool of the source if it has one.
 	 *
-	 * @param source the source character array for this token
+	 * @param source the source data for this token
 	 * @return the string value held by this token
 	 */
-	protected String getStringValue(char[] source){
+	protected String getStringValue(LazySource source){
+		source=source.of(this);
+		if(type==FIELD && source.keyPool!=null){
+			return source.keyPool.get(source,startIndex,endIndex);
+		}
+		if(source.decoded==null || type==VALUE_NULL){
+			return decodeStringValue(source);
+		}
+		String value=source.getDecoded(startIndex);
+		if(value==null){
+			value=decodeStringValue(source);
+			source.putDecoded(startIndex,value);
+		}
+		return value;
+	}
+
+	private String decodeStringValue(LazySource source){
 		if(type==VALUE_NULL){
 			return null;
 		}else if(type!=VALUE_ESTRING){
-			return new String(source,startIndex,endIndex-startIndex);
-		}else{
-			StringBuilder buf=new StringBuilder(endIndex-startIndex);
-			for(int i=startIndex;i<endIndex;i++){
-				char c=source[i];
-				if(c=='\\'){
+			return source.getString(startIndex,endIndex);
+		}else if(source.cbuf!=null){
+			return unescape(source.cbuf,startIndex,endIndex,(int)number);
+		}
+		String value=null;
+		if(number>0){
+			value=unescape(source,startIndex,endIndex,(int)number);
+		}
+		if(value==null){
+			// Decode the UTF-8 data or copy the characters out before
+			// unescaping, escape sequences are pure ascii so they survive
+			// the decoding untouched
+			char[] raw=source.getString(startIndex,endIndex).toCharArray();
+			value=unescape(raw,0,raw.length,0);
+		}
+		return value;
+	}
+
+	// The value of every hex digit, and -1 for all other ascii characters
+	protected static final byte[] HEX_VALUES=new byte[128];
+
+	static{
+		Arrays.fill(HEX_VALUES,(byte)-1);
+		for(int i=0;i<10;i++){
+			HEX_VALUES['0'+i]=(byte)i;
+		}
+		for(int i=0;i<6;i++){
+			HEX_VALUES['a'+i]=(byte)(10+i);
+			HEX_VALUES['A'+i]=(byte)(10+i);
+		}
+	}
+
+	/**
+	 * Builds a string from the given characters with all escape sequences
+	 * replaced by the characters they represent. Runs of characters without
+	 * escapes are copied in bulk into an array of exactly the final length.
+	 * Unicode escapes are decoded one UTF-16 unit at a time, so a surrogate
+	 * pair given as two escapes ends up as the same pair in the string.
+	 *
+	 * @param source the characters to unescape
+	 * @param startIndex the first index to include
+	 * @param endIndex the index after the last index to include
+	 * @param escapes how many characters shorter the string gets, or zero if unknown
+	 * @return the unescaped string
+	 * @throws LazyException if an escape sequence is malformed
+	 */
+	private static String unescape(char[] source,int startIndex,int endIndex,int escapes) throws LazyException{
+		if(escapes<=0){
+			for(int i=startIndex;i<endIndex-1;i++){
+				if(source[i]=='\\'){
+					i++;
+					escapes+=source[i]=='u'?5:1;
+				}
+			}
+		}
+		char[] buf=newBuffer(startIndex,endIndex,escapes);
+		int length=0;
+		int i=startIndex;
+		while(true){
+			int run=i;
+			while(run<endIndex && source[run]!='\\'){
+				run++;
+			}
+			if(length+run-i>buf.length){
+				// Only a cut off unicode escape saves more than it has room for
+				throw new LazyException("Invalid unicode escape sequence",startIndex);
+			}
+			System.arraycopy(source,i,buf,length,run-i);
+			length+=run-i;
+			if(run>=endIndex-1){
+				break;
+			}
+			char c=source[run+1];
+			i=run+2;
+			if(c=='"' || c=='\\' || c=='/'){
+				buf[length++]=c;
+			}else if(c=='b'){
+				buf[length++]='\b';
+			}else if(c=='f'){
+				buf[length++]='\f';
+			}else if(c=='n'){
+				buf[length++]='\n';
+			}else if(c=='r'){
+				buf[length++]='\r';
+			}else if(c=='t'){
+				buf[length++]='\t';
+			}else if(c=='u' && i+4<=endIndex){
+				int value=0;
+				for(int j=i;j<i+4;j++){
+					char h=source[j];
+					int digit=h<128?HEX_VALUES[h]:-1;
+					if(digit<0){
+						throw new LazyException("Invalid unicode escape sequence",run);
+					}
+					value=(value<<4)|digit;
+				}
+				buf[length++]=(char)value;
+				i+=4;
+			}else{
+				throw new LazyException("Invalid escape sequence",run);
+			}
+		}
+		return new String(buf);
+	}
+
+	/**
+	 * Builds a string from the raw data of a byte or character sequence
+	 * source with all escape sequences replaced by the characters they
+	 * represent. The data is read straight from the source into an array of
+	 * exactly the final length, decoding UTF-8 data on the way.
+	 *
+	 * @param source the source data for the string
+	 * @param startIndex the first index to include
+	 * @param endIndex the index after the last index to include
+	 * @param savings how many characters shorter the string is than its raw data
+	 * @return the unescaped string, or null if the data is not well formed
+	 *         UTF-8 or does not decode to the expected length
+	 * @throws LazyException if an escape sequence is malformed
+	 */
+	private static String unescape(LazySource source,int startIndex,int endIndex,int savings) throws LazyException{
+		char[] buf=newBuffer(startIndex,endIndex,savings);
+		int length=0;
+		int i=startIndex;
+		if(source.bbuf!=null){
+			ByteBuffer bbuf=source.bbuf;
+			while(i<endIndex){
+				if(length==buf.length){
+					return null;
+				}
+				int b=bbuf.get(i);
+				if(b=='\\'){
+					buf[length++]=unescape(source,i,endIndex);
+					i+=source.charAt(i+1)=='u'?6:2;
+				}else if(b>=0){
+					buf[length++]=(char)b;
 					i++;
-					c=source[i];
-					if(c=='"' || c=='\\' || c=='/'){
-						buf.append(c);
-					}else if(c=='b'){
-						buf.append('\b');
-					}else if(c=='f'){
-						buf.append('\f');
-					}else if(c=='n'){
-						buf.append('\n');
-					}else if(c=='r'){
-						buf.append('\r');
-					}else if(c=='t'){
-						buf.append('\t');
-					}else if(c=='u'){
-						String code=new String(source,i+1,4);
-						buf.append((char)Integer.parseInt(code, 16));
-						i+=4;
+				}else if((b&0xE0)==0xC0 && i+1<endIndex){
+					int b1=bbuf.get(i+1);
+					if((b1&0xC0)!=0x80 || (b&0x1E)==0){
+						return null;
+					}
+					buf[length++]=(char)(((b&0x1F)<<6)|(b1&0x3F));
+					i+=2;
+				}else if((b&0xF0)==0xE0 && i+2<endIndex){
+					int b1=bbuf.get(i+1);
+					int b2=bbuf.get(i+2);
+					if((b1&0xC0)!=0x80 || (b2&0xC0)!=0x80){
+						return null;
+					}
+					int c=((b&0x0F)<<12)|((b1&0x3F)<<6)|(b2&0x3F);
+					if(c<0x800 || (c>=Character.MIN_SURROGATE && c<=Character.MAX_SURROGATE)){
+						return null;
+					}
+					buf[length++]=(char)c;
+					i+=3;
+				}else if((b&0xF8)==0xF0 && i+3<endIndex && length+1<buf.length){
+					int b1=bbuf.get(i+1);
+					int b2=bbuf.get(i+2);
+					int b3=bbuf.get(i+3);
+					if((b1&0xC0)!=0x80 || (b2&0xC0)!=0x80 || (b3&0xC0)!=0x80){
+						return null;
+					}
+					int c=((b&0x07)<<18)|((b1&0x3F)<<12)|((b2&0x3F)<<6)|(b3&0x3F);
+					if(c<Character.MIN_SUPPLEMENTARY_CODE_POINT || c>Character.MAX_CODE_POINT){
+						return null;
 					}
+					buf[length++]=Character.highSurrogate(c);
+					buf[length++]=Character.lowSurrogate(c);
+					i+=4;
 				}else{
-					buf.append(c);
+					return null;
+				}
+			}
+		}else{
+			CharSequence seq=source.seq;
+			while(i<endIndex){
+				if(length==buf.length){
+					throw new LazyException("Invalid unicode escape sequence",startIndex);
+				}
+				char c=seq.charAt(i);
+				if(c=='\\'){
+					buf[length++]=unescape(source,i,endIndex);
+					i+=seq.charAt(i+1)=='u'?6:2;
+				}else{
+					buf[length++]=c;
+					i++;
 				}
 			}
-			return buf.toString();
 		}
+		if(length!=buf.length){
+			return null;
+		}
+		return new String(buf);
+	}
+
+	// Returns the character given by the escape sequence starting with the
+	// backslash at the given index
+	private static char unescape(LazySource source,int index,int endIndex) throws LazyException{
+		if(index+1>=endIndex){
+			throw new LazyException("Invalid escape sequence",index);
+		}
+		char c=source.charAt(index+1);
+		if(c=='"' || c=='\\' || c=='/'){
+			return c;
+		}else if(c=='b'){
+			return '\b';
+		}else if(c=='f'){
+			return '\f';
+		}else if(c=='n'){
+			return '\n';
+		}else if(c=='r'){
+			return '\r';
+		}else if(c=='t'){
+			return '\t';
+		}else if(c=='u' && index+6<=endIndex){
+			int value=0;
+			for(int j=index+2;j<index+6;j++){
+				char h=source.charAt(j);
+				int digit=h<128?HEX_VALUES[h]:-1;
+				if(digit<0){
+					throw new LazyException("Invalid unicode escape sequence",index);
+				}
+				value=(value<<4)|digit;
+			}
+			return (char)value;
+		}
+		throw new LazyException("Invalid escape sequence",index);
 	}
 
-	private String getRawStringValue(char[] source){
-		return new String(source,startIndex,endIndex-startIndex);
+	// An array for the characters of a string with the given raw data that
+	// gets shorter by the given number of characters
+	private static char[] newBuffer(int startIndex,int endIndex,int savings) throws LazyException{
+		if(savings>endIndex-startIndex){
+			throw new LazyException("Invalid unicode escape sequence",startIndex);
+		}
+		return new char[endIndex-startIndex-savings];
+	}
+
+	private String getRawStringValue(LazySource source){
+		return source.getString(startIndex,endIndex);
 	}
 
 	/**
 	 * Returns a string iterator for this tokens children.
 	 *
-	 * @param cbuf the source character array for this token
+	 * @param source the source data for this token
 	 * @return an iterator for the children of this token as strings
 	 */
-	protected Iterator<String> getStringIterator(char[] cbuf){
-		return new StringIterator(this,cbuf);
+	protected Iterator<String> getStringIterator(LazySource source){
+		source=source.of(this);
+		return new StringIterator(this,source);
 	}
 
 	/*
@@ -344,11 +699,11 @@ public final class LazyNode{
 	// Internal class used to iterate over children as strings
 	private final class StringIterator implements Iterator<String>{
 		private LazyNode next;
-		private char[] cbuf;
+		private LazySource source;
 
-		protected StringIterator(LazyNode token,char[] cbuf){
+		protected StringIterator(LazyNode token,LazySource source){
 			next=token.child;
-			this.cbuf=cbuf;
+			this.source=source;
 		}
 
 		public boolean hasNext(){
@@ -361,7 +716,7 @@ public final class LazyNode{
 
 		public String next() throws NoSuchElementException{
 			if(hasNext()){
-				String value=next.getStringValue(cbuf);
+				String value=next.getStringValue(source);
 				next=next.next; // If only I could squeeze one more "next" into this statement
 				return value;
 			}
@@ -369,7 +724,8 @@ public final class LazyNode{
 		}
 	}
 	// Functionality for extracting templates
-	private void addCommaSeparatedChildren(char[] cbuf,Template template){
+	private void addCommaSeparatedChildren(LazySource source,Template template){
+		expand(source);
 		LazyNode next=child;
 		boolean first=true;
 		while(next!=null){
@@ -378,17 +734,17 @@ public final class LazyNode{
 			}else{
 				template.addConstant(",");
 			}
-			next.addSegments(cbuf,template);
+			next.addSegments(source,template);
 			next=next.next;
 		}
 	}
 
-	private String getFieldString(char[] cbuf){
-		return "\""+getRawStringValue(cbuf)+"\":";
+	private String getFieldString(LazySource source){
+		return "\""+getRawStringValue(source)+"\":";
 	}
 
-	private void putString(char[] cbuf,ByteBuffer buf,DictionaryCache dict){
-		String str=getStringValue(cbuf);
+	private void putString(LazySource source,ByteBuffer buf,DictionaryCache dict){
+		String str=getStringValue(source);
 		short pos=dict.put(str);
 		buf.putShort(pos);
 		if(pos>-1){
@@ -404,11 +760,13 @@ public final class LazyNode{
 		buf.put(data);
 	}
 
-	protected void writeSegmentValues(char cbuf[], ByteBuffer buf,DictionaryCache dict) throws BufferOverflowException{
+	protected void writeSegmentValues(LazySource source, ByteBuffer buf,DictionaryCache dict) throws BufferOverflowException{
+		source=source.of(this);
 		if(type==OBJECT || type==ARRAY){
+			expand(source);
 			LazyNode next=child;
 			while(next!=null){
-				next.writeSegmentValues(cbuf,buf,dict);
+				next.writeSegmentValues(source,buf,dict);
 				next=next.next;
 			}
 		}else if(type==FIELD){
@@ -417,9 +775,9 @@ public final class LazyNode{
 			}else if(child.type==VALUE_FALSE){
 				buf.put((byte)0);
 			}else if(child.type==VALUE_STRING || type==VALUE_ESTRING){
-				child.putString(cbuf,buf,dict);
-			}else if(child.type==VALUE_INTEGER){
-				long l=child.getLongValue(cbuf);
+				child.putString(source,buf,dict);
+			}else if(child.type==VALUE_INTEGER && child.getNumberClass(source)!=NUMBER_BIG){
+				long l=child.number;
 				if(l<128 && l>=-128){
 					buf.put((byte)l);
 				}else if(l<32768 && l>=-32768){
@@ -429,19 +787,19 @@ public final class LazyNode{
 				}else{
 					buf.putLong(l);
 				}
-			}else if(child.type==VALUE_FLOAT){
-				buf.putDouble(child.getDoubleValue(cbuf));
+			}else if(child.type==VALUE_FLOAT || child.type==VALUE_INTEGER){
+				buf.putDouble(child.getDoubleValue(source));
 			}else{
-				child.writeSegmentValues(cbuf,buf,dict);
+				child.writeSegmentValues(source,buf,dict);
 			}
 		}else if(type==VALUE_TRUE){
 			buf.put((byte)1);
 		}else if(type==VALUE_FALSE){
 			buf.put((byte)0);
 		}else if(type==VALUE_STRING || type==VALUE_ESTRING){
-			putString(cbuf,buf,dict);
-		}else if(type==VALUE_INTEGER){
-			long l=getLongValue(cbuf);
+			putString(source,buf,dict);
+		}else if(type==VALUE_INTEGER && getNumberClass(source)!=NUMBER_BIG){
+			long l=number;
 			if(l<128 && l>=-128){
 				buf.put((byte)l);
 			}else if(l<32768 && l>=-32768){
@@ -451,44 +809,45 @@ public final class LazyNode{
 			}else{
 				buf.putLong(l);
 			}
-		}else if(type==VALUE_FLOAT){
-			buf.putDouble(getDoubleValue(cbuf));
+		}else if(type==VALUE_FLOAT || type==VALUE_INTEGER){
+			buf.putDouble(getDoubleValue(source));
 		}
 	}
 
-	protected void addSegments(char[] cbuf,Template template){
+	protected void addSegments(LazySource source,Template template){
+		source=source.of(this);
 		if(type==OBJECT){
 			template.addConstant("{");
-			addCommaSeparatedChildren(cbuf,template);
+			addCommaSeparatedChildren(source,template);
 			template.addConstant("}");
 		}else if(type==ARRAY){
 			template.addConstant("[");
-			addCommaSeparatedChildren(cbuf,template);
+			addCommaSeparatedChildren(source,template);
 			template.addConstant("]");
 		}else if(type==FIELD){
 			if(child.type==VALUE_TRUE || child.type==VALUE_FALSE){
-				template.addBoolean(getFieldString(cbuf));
+				template.addBoolean(getFieldString(source));
 			}else if(child.type==VALUE_STRING){
-				template.addString(getFieldString(cbuf));
+				template.addString(getFieldString(source));
 			}else if(child.type==VALUE_NULL){
-				template.addNull(getFieldString(cbuf));
-			}else if(child.type==VALUE_INTEGER){
-				long l=child.getLongValue(cbuf);
+				template.addNull(getFieldString(source));
+			}else if(child.type==VALUE_INTEGER && child.getNumberClass(source)!=NUMBER_BIG){
+				long l=child.number;
 				if(l<128 && l>=-128){
-					template.addByte(getFieldString(cbuf));
+					template.addByte(getFieldString(source));
 				}else if(l<32768 && l>=-32768){
-					template.addShort(getFieldString(cbuf));
+					template.addShort(getFieldString(source));
 				}else if(l<=2147483647 && l>=-2147483648){
-					template.addInt(getFieldString(cbuf));
+					template.addInt(getFieldString(source));
 				}else{
-					template.addLong(getFieldString(cbuf));
+					template.addLong(getFieldString(source));
 				}
-			}else if(child.type==VALUE_FLOAT){
+			}else if(child.type==VALUE_FLOAT || child.type==VALUE_INTEGER){
 				// TODO: could we differentiate for float's vs doubles?
-				template.addDouble(getFieldString(cbuf));
+				template.addDouble(getFieldString(source));
 			}else{
-				template.addConstant(getFieldString(cbuf));
-				child.addSegments(cbuf,template);
+				template.addConstant(getFieldString(source));
+				child.addSegments(source,template);
 			}
 		}else if(type==VALUE_TRUE || type==VALUE_FALSE){
 			template.addBoolean();
@@ -496,8 +855,8 @@ public final class LazyNode{
 			template.addNull();
 		}else if(type==VALUE_STRING){
 			template.addString();
-		}else if(type==VALUE_INTEGER){
-			long l=getLongValue(cbuf);
+		}else if(type==VALUE_INTEGER && getNumberClass(source)!=NUMBER_BIG){
+			long l=number;
 			if(l<128 && l>=-128){
 				template.addByte();
 			}else if(l<32768 && l>=-32768){
@@ -507,7 +866,7 @@ public final class LazyNode{
 			}else{
 				template.addLong();
 			}
-		}else if(type==VALUE_FLOAT){
+		}else if(type==VALUE_FLOAT || type==VALUE_INTEGER){
 			template.addDouble();
 		}
 	}
@@ -526,52 +885,60 @@ public final class LazyNode{
 		// TODO: add constructor for this purpose
 		LazyNode node=new LazyNode(type,startIndex);
 		node.endIndex=endIndex; 
-		if(type==OBJECT || type==ARRAY){
+		if(type==VALUE_ESTRING){
+			node.number=buf.getInt();
+		}else if(type==OBJECT || type==ARRAY){
 			LazyNode child=readFromBuffer(buf);
-			node.child=child;
-			node.lastChild=child;
-			child=readFromBuffer(buf);
 			while(child!=null){
-				node.lastChild.next=child;
-				node.lastChild=child;
+				node.addChild(child);
 				child=readFromBuffer(buf);
 			}
 		}else if(type==FIELD){
 			LazyNode child=readFromBuffer(buf);
-			node.child=child;
-			node.lastChild=child;
+			if(child!=null){
+				node.addChild(child);
+			}
 		}
 		return node;
 	}
 
-	protected void writeToBuffer(ByteBuffer buf){
+	protected void writeToBuffer(LazySource source,ByteBuffer buf){
+		source=source.of(this);
 		// ByteBuffer must be allocated with enough space before calling
 		buf.put(type);
 		buf.putInt(startIndex);
 		buf.putInt(endIndex);
-		if(type==OBJECT || type==ARRAY){
+		if(type==VALUE_ESTRING){
+			buf.putInt((int)number);
+		}else if(type==OBJECT || type==ARRAY){
 			LazyNode n=child;
 			while(n!=null){
-				n.writeToBuffer(buf);
+				n.writeToBuffer(source,buf);
 				n=n.next;
 			}
 			buf.put(END_MARKER);
 		}else if(type==FIELD){
-			child.writeToBuffer(buf);
+			child.writeToBuffer(source,buf);
 		}
 	}
 
-	protected int getBufferSize(){
+	protected int getBufferSize(LazySource source){
+		source=source.of(this);
 		int size=1+4+4; // type, start and end index, modifier
 		if(type==OBJECT || type==ARRAY){
+			// The size is always calculated before writing, so this is
+			// where pending children are built
+			expand(source);
 			LazyNode n=child;
 			while(n!=null){
-				size+=n.getBufferSize();
+				size+=n.getBufferSize(source);
 				n=n.next;
 			}
 			size+=1;
 		}else if(type==FIELD){
-			size+=child.getBufferSize();
+			size+=child.getBufferSize(source);
+		}else if(type==VALUE_ESTRING){
+			size+=4; // how much shorter the unescaped string is
 		}
 		return size;
 	}
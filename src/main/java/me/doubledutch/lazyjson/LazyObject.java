@@ -16,20 +16,93 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the string could not be parsed as a JSON object
 	 */
 	public LazyObject(String raw) throws LazyException{
-		LazyParser parser=new LazyParser(raw);
-		parser.tokenize();	
+		this(new LazyParser(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation found in
+	 * a section of the given character array. The characters are parsed in
+	 * place, and the indexes of the object point into the full array. They
+	 * must not be modified while this object is in use.
+	 *
+	 * @param raw the input characters
+	 * @param offset the index of the first character to parse
+	 * @param length the number of characters to parse
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(char[] raw,int offset,int length) throws LazyException{
+		this(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation in the
+	 * given character sequence, such as a StringBuilder or CharBuffer. The
+	 * characters are read in place through the sequence and must not be
+	 * modified while this object is in use.
+	 *
+	 * @param raw the input characters
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(CharSequence raw) throws LazyException{
+		this(new LazyParser(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON
+	 * representation in the given byte array. The data is parsed in place and
+	 * must not be modified while this object is in use.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(byte[] raw) throws LazyException{
+		this(raw,0,raw.length);
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON
+	 * representation found in a section of the given byte array. The data is
+	 * parsed in place and must not be modified while this object is in use.
+	 *
+	 * @param raw the input data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(byte[] raw,int offset,int length) throws LazyException{
+		this(new LazyParser(raw,offset,length));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON
+	 * representation between the position and limit of the given buffer. The
+	 * data is parsed in place and must not be modified while this object is
+	 * in use.
+	 *
+	 * @param raw the input data
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(ByteBuffer raw) throws LazyException{
+		this(new LazyParser(raw));
+	}
+
+	private LazyObject(LazyParser parser) throws LazyException{
+		parser.tokenize();
 		if(parser.root.type!=LazyNode.OBJECT){
-			throw new LazyException("JSON Object must start with {",0);
+			throw new LazyException("JSON Object must start with {",parser.root.startIndex);
 		}
 		root=parser.root;
-		cbuf=parser.cbuf;
-		// source=raw;
+		source=parser.source;
 	}
 
 	protected LazyObject(LazyNode root,char[] source){
 		super(root,source);
 	}
 
+	protected LazyObject(LazyNode root,LazySource source){
+		super(root,source);
+	}
+
 	/**
 	 * Returns the string value stored in this object for the given key.
 	 *
@@ -39,7 +112,19 @@ public class LazyObject extends LazyElement{
 	 */
 	public String getString(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
-		return token.getStringValue(cbuf);
+		return token.getStringValue(source);
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return the requested string value
+	 * @throws LazyException if the value for the given key was not a string.
+	 */
+	public String getString(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getStringValue(source);
 	}
 
 	/**
@@ -53,7 +138,21 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return null;
 		if(token.type==LazyNode.VALUE_NULL)return null;
-		return token.getStringValue(cbuf);
+		return token.getStringValue(source);
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 * Returns null if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return the requested string value or null if there was no such key
+	 */
+	public String optString(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		return token.getStringValue(source);
 	}
 
 	/**
@@ -68,7 +167,22 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getStringValue(cbuf);
+		return token.getStringValue(source);
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested string value or the default value if there was no such key
+	 */
+	public String optString(LazyKey key,String defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getStringValue(source);
 	}
 
 	/**
@@ -80,7 +194,19 @@ public class LazyObject extends LazyElement{
 	 */
 	public int getInt(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
-		return token.getIntValue(cbuf);
+		return token.getIntValue(source);
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return an integer value
+	 * @throws LazyException if the value for the given key was not an integer.
+	 */
+	public int getInt(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getIntValue(source);
 	}
 
 	/**
@@ -94,7 +220,21 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return 0;
 		if(token.type==LazyNode.VALUE_NULL)return 0;
-		return token.getIntValue(cbuf);
+		return token.getIntValue(source);
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 * Returns 0 if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return the requested integer value or 0 if there was no such key
+	 */
+	public int optInt(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return 0;
+		if(token.type==LazyNode.VALUE_NULL)return 0;
+		return token.getIntValue(source);
 	}
 
 	/**
@@ -109,7 +249,22 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getIntValue(cbuf);
+		return token.getIntValue(source);
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested integer value or the default value if there was no such key
+	 */
+	public int optInt(LazyKey key,int defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getIntValue(source);
 	}
 
 	/**
@@ -121,7 +276,19 @@ public class LazyObject extends LazyElement{
 	 */
 	public long getLong(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
-		return token.getLongValue(cbuf);
+		return token.getLongValue(source);
+	}
+
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a long.
+	 */
+	public long getLong(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getLongValue(source);
 	}
 
 	/**
@@ -135,7 +302,21 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return 0l;
 		if(token.type==LazyNode.VALUE_NULL)return 0l;
-		return token.getLongValue(cbuf);
+		return token.getLongValue(source);
+	}
+
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 * Returns 0 if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return the requested long value or 0 if there was no such key
+	 */
+	public long optLong(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return 0l;
+		if(token.type==LazyNode.VALUE_NULL)return 0l;
+		return token.getLongValue(source);
 	}
 
 	/**
@@ -150,7 +331,22 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getLongValue(cbuf);
+		return token.getLongValue(source);
+	}
+
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested long value or the default value if there was no such key
+	 */
+	public long optLong(LazyKey key,long defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getLongValue(source);
 	}
 
 	/**
@@ -162,7 +358,19 @@ public class LazyObject extends LazyElement{
 	 */
 	public double getDouble(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
-		return token.getDoubleValue(cbuf);
+		return token.getDoubleValue(source);
+	}
+
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a double.
+	 */
+	public double getDouble(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		return token.getDoubleValue(source);
 	}
 
 	/**
@@ -176,7 +384,21 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return 0.0;
 		if(token.type==LazyNode.VALUE_NULL)return 0.0;
-		return token.getDoubleValue(cbuf);
+		return token.getDoubleValue(source);
+	}
+
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 * Returns 0.0 if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return the requested double value or 0.0 if there was no such key
+	 */
+	public double optDouble(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return 0.0;
+		if(token.type==LazyNode.VALUE_NULL)return 0.0;
+		return token.getDoubleValue(source);
 	}
 
 	/**
@@ -191,7 +413,22 @@ public class LazyObject extends LazyElement{
 		LazyNode token=getOptionalFieldToken(key);
 		if(token==null)return defaultValue;
 		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getDoubleValue(cbuf);
+		return token.getDoubleValue(source);
+	}
+
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested long value or the default value if there was no such key
+	 */
+	public double optDouble(LazyKey key,double defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getDoubleValue(source);
 	}
 
 	/**
@@ -207,6 +444,19 @@ public class LazyObject extends LazyElement{
 		return false;
 	}
 
+	/**
+	 * Returns true if the value stored in this object for the given key is null.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return true if the value is null, false otherwise
+	 * @throws LazyException if no value was set for the given key.
+	 */
+	public boolean isNull(LazyKey key){
+		LazyNode token=getFieldToken(key);
+		if(token.type==LazyNode.VALUE_NULL)return true;
+		return false;
+	}
+
 	/**
 	 * Returns the boolean value stored in this object for the given key.
 	 *
@@ -221,6 +471,20 @@ public class LazyObject extends LazyElement{
 		throw new LazyException("Requested value is not a boolean",token);
 	}
 
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a boolean.
+	 */
+	public boolean getBoolean(LazyKey key){
+		LazyNode token=getFieldToken(key);
+		if(token.type==LazyNode.VALUE_TRUE)return true;
+		if(token.type==LazyNode.VALUE_FALSE)return false;
+		throw new LazyException("Requested value is not a boolean",token);
+	}
+
 	/**
 	 * Returns the boolean value stored in this object for the given key.
 	 * Returns false if there is no such key.
@@ -237,6 +501,22 @@ public class LazyObject extends LazyElement{
 		return false;
 	}
 
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns false if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return the requested boolean value or false if there was no such key
+	 */
+	public boolean optBoolean(LazyKey key){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return false;
+		// if(token.type==LazyNode.VALUE_NULL)return false;
+		if(token.type==LazyNode.VALUE_TRUE)return true;
+		// if(token.type==LazyNode.VALUE_FALSE)return false;
+		return false;
+	}
+
 	/**
 	 * Returns the boolean value stored in this object for the given key.
 	 * Returns the default value if there is no such key.
@@ -253,6 +533,22 @@ public class LazyObject extends LazyElement{
 		return false;
 	}
 
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested boolean value or the default value if there was no such key
+	 */
+	public boolean optBoolean(LazyKey key,boolean defaultValue){
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		if(token.type==LazyNode.VALUE_TRUE)return true;
+		return false;
+	}
+
 	/**
 	 * Returns the JSON object stored in this object for the given key.
 	 *
@@ -263,7 +559,20 @@ public class LazyObject extends LazyElement{
 	public LazyObject getJSONObject(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
 		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
-		return new LazyObject(token,cbuf);
+		return new LazyObject(token,source);
+	}
+
+	/**
+	 * Returns the JSON object stored in this object for the given key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return an array value
+	 * @throws LazyException if the value for the given key was not an object.
+	 */
+	public LazyObject getJSONObject(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		return new LazyObject(token,source);
 	}
 
 	/**
@@ -278,7 +587,22 @@ public class LazyObject extends LazyElement{
 		if(token==null)return null;
 		if(token.type==LazyNode.VALUE_NULL)return null;
 		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
-		return new LazyObject(token,cbuf);
+		return new LazyObject(token,source);
+	}
+
+	/**
+	 * Returns the JSON object stored in this object for the given key on null if the key doesn't exist.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @throws LazyException if the value for the given key was not an object.
+	 * @return an object value or null if there was no such key
+	 */
+	public LazyObject optJSONObject(LazyKey key) throws LazyException{
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		return new LazyObject(token,source);
 	}
 
 	/**
@@ -291,7 +615,20 @@ public class LazyObject extends LazyElement{
 	public LazyArray getJSONArray(String key) throws LazyException{
 		LazyNode token=getFieldToken(key);
 		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
-		return new LazyArray(token,cbuf);
+		return new LazyArray(token,source);
+	}
+
+	/**
+	 * Returns the JSON array stored in this object for the given key.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return an array value
+	 * @throws LazyException if the value for the given key was not an array.
+	 */
+	public LazyArray getJSONArray(LazyKey key) throws LazyException{
+		LazyNode token=getFieldToken(key);
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		return new LazyArray(token,source);
 	}
 
 	/**
@@ -306,7 +643,22 @@ public class LazyObject extends LazyElement{
 		if(token==null)return null;
 		if(token.type==LazyNode.VALUE_NULL)return null;
 		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
-		return new LazyArray(token,cbuf);
+		return new LazyArray(token,source);
+	}
+
+	/**
+	 * Returns the JSON array stored in this object for the given key or null if the key doesn't exist.
+	 *
+	 * @param key the precompiled name of the field on this object
+	 * @return an array value or null if the key doesn't exist
+	 * @throws LazyException if the value for the given key was not an array.
+	 */
+	public LazyArray optJSONArray(LazyKey key) throws LazyException{
+		LazyNode token=getOptionalFieldToken(key);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		return new LazyArray(token,source);
 	}
 
 	/**
@@ -315,7 +667,7 @@ public class LazyObject extends LazyElement{
 	 * @return an iterator of object field names
 	 */
 	public Iterator<String> keys(){
-		return root.getStringIterator(cbuf);
+		return root.getStringIterator(source);
 	}
 
 	/**
@@ -327,19 +679,7 @@ public class LazyObject extends LazyElement{
 	 * @return true if the key matches, false otherwise
 	 */
 	private boolean keyMatch(String key,LazyNode token){
-		// Quickly check the length first
-		int length=key.length();
-		if(token.endIndex-token.startIndex!=length){
-			return false;
-		}
-		// Now go through the field character for character to compare
-		for(int i=0;i<length;i++){
-			char c=key.charAt(i);
-			if(c!=cbuf[token.startIndex+i]){
-				return false;
-			}
-		}
-		return true;
+		return source.of(token).matches(key,token.startIndex,token.endIndex);
 	}
 
 	/**
@@ -349,14 +689,17 @@ public class LazyObject extends LazyElement{
 	 * @return true if the key exists, false otherwise
 	 */
 	public boolean has(String key){
-		LazyNode child=root.child;
-		while(child!=null){
-			if(keyMatch(key,child)){
-				return true;
-			}
-			child=child.next;
-		}
-		return false;
+		return findField(key)!=null;
+	}
+
+	/**
+	 * Returns true if the given key matches a field on this object.
+	 *
+	 * @param key the precompiled name of the field to look for
+	 * @return true if the key exists, false otherwise
+	 */
+	public boolean has(LazyKey key){
+		return findField(key)!=null;
 	}
 
 	/**
@@ -370,14 +713,19 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the field does not exist
 	 */
 	private LazyNode getFieldToken(String key) throws LazyException{
-		LazyNode child=root.child;
-		while(child!=null){
-			if(keyMatch(key,child)){
-				return child.child;
-			}
-			child=child.next;
+		LazyNode field=findField(key);
+		if(field==null){
+			throw new LazyException("Unknown field '"+key+"'");
+		}
+		return field.child;
+	}
+
+	private LazyNode getFieldToken(LazyKey key) throws LazyException{
+		LazyNode field=findField(key);
+		if(field==null){
+			throw new LazyException("Unknown field '"+key+"'");
 		}
-		throw new LazyException("Unknown field '"+key+"'");
+		return field.child;
 	}
 
 	/**
@@ -390,16 +738,207 @@ public class LazyObject extends LazyElement{
 	 * @return the first child of the matching field token if one exists, null otherwise
 	 */
 	private LazyNode getOptionalFieldToken(String key){
-		LazyNode child=root.child;
-		while(child!=null){
+		LazyNode field=findField(key);
+		if(field==null){
+			return null;
+		}
+		return field.child;
+	}
+
+	private LazyNode getOptionalFieldToken(LazyKey key){
+		LazyNode field=findField(key);
+		if(field==null){
+			return null;
+		}
+		return field.child;
+	}
+
+	// Objects with at least this many fields get a shape or a hash index
+	// for their fields once a second lookup is made on them. Scanning the
+	// fields is faster than hashing the key for smaller objects.
+	private static final int INDEX_MIN_FIELDS=16;
+
+	// The shape shared with other objects with the same field names and the
+	// field tokens of this object in order, if a shape was found
+	protected LazyShape shape;
+	protected LazyNode[] fields;
+
+	// Open addressing table of the field tokens of this object and the hash
+	// of their names, built on demand for objects without a shape
+	private LazyNode[] index;
+	private int[] indexHashes;
+	private boolean repeatedLookup=false;
+
+	// Stored traversal location for fast in order lookups, the field after
+	// the one found by the last scan of the fields
+	private LazyNode selectToken;
+	private boolean namesChecked=false;
+	private boolean uniqueNames;
+
+	/**
+	 * Find the first field token matching the given key.
+	 *
+	 * @param key the name of the desired field
+	 * @return the matching field token, or null if there is none
+	 */
+	private LazyNode findField(String key){
+		if(useIndex()){
+			if(shape!=null){
+				int position=shape.indexOf(key);
+				return position<0?null:fields[position];
+			}
+			int h=source.hash(key);
+			int mask=index.length-1;
+			for(int slot=spread(h)&mask;index[slot]!=null;slot=(slot+1)&mask){
+				if(indexHashes[slot]==h && keyMatch(key,index[slot])){
+					return index[slot];
+				}
+			}
+			return null;
+		}
+		// Scan from the stored traversal location to the end, then from the
+		// start up to it
+		LazyNode start=scanStart();
+		for(LazyNode child=start;child!=null;child=child.next){
+			if(keyMatch(key,child)){
+				selectToken=child.next;
+				return child;
+			}
+		}
+		for(LazyNode child=root.child;child!=start;child=child.next){
 			if(keyMatch(key,child)){
-				return child.child;
+				selectToken=child.next;
+				return child;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the first field token matching the given precompiled key.
+	 *
+	 * @param key the precompiled name of the desired field
+	 * @return the matching field token, or null if there is none
+	 */
+	private LazyNode findField(LazyKey key){
+		if(useIndex()){
+			if(shape!=null){
+				int position=shape.indexOf(key);
+				return position<0?null:fields[position];
+			}
+			int h=source.hash(key);
+			int mask=index.length-1;
+			for(int slot=spread(h)&mask;index[slot]!=null;slot=(slot+1)&mask){
+				if(indexHashes[slot]==h && source.of(index[slot]).matches(key,index[slot].startIndex,index[slot].endIndex)){
+					return index[slot];
+				}
+			}
+			return null;
+		}
+		LazyNode start=scanStart();
+		for(LazyNode child=start;child!=null;child=child.next){
+			if(source.of(child).matches(key,child.startIndex,child.endIndex)){
+				selectToken=child.next;
+				return child;
+			}
+		}
+		for(LazyNode child=root.child;child!=start;child=child.next){
+			if(source.of(child).matches(key,child.startIndex,child.endIndex)){
+				selectToken=child.next;
+				return child;
 			}
-			child=child.next;
 		}
 		return null;
 	}
 
+	// Returns the field a scan should start at. Fields are usually read in
+	// the order they appear in, so a scan starts right after the field found
+	// by the previous scan and wraps around. That could find a later one of
+	// several fields with the same name, so the stored location is only used
+	// when all names are known to be different.
+	private LazyNode scanStart(){
+		if(selectToken==null){
+			return root.child;
+		}
+		if(!namesChecked){
+			uniqueNames=checkUniqueNames();
+			namesChecked=true;
+		}
+		return uniqueNames?selectToken:root.child;
+	}
+
+	// Compare all pairs of field names. Only objects too small for an index
+	// get here with more than one lookup, so this is cheap.
+	private boolean checkUniqueNames(){
+		int[] hashes=new int[length()];
+		int i=0;
+		for(LazyNode a=root.child;a!=null;a=a.next){
+			hashes[i++]=source.of(a).hash(a.startIndex,a.endIndex);
+		}
+		i=0;
+		for(LazyNode a=root.child;a!=null;a=a.next,i++){
+			int j=i+1;
+			for(LazyNode b=a.next;b!=null;b=b.next,j++){
+				if(hashes[i]==hashes[j] && b.endIndex-b.startIndex==a.endIndex-a.startIndex
+					&& source.of(b).matches(source.of(a).getString(a.startIndex,a.endIndex),b.startIndex,b.endIndex)){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Returns true if lookups should go through the shape or the index,
+	// preparing them on the second lookup on a wide object
+	private boolean useIndex(){
+		if(index==null && shape==null){
+			if(!repeatedLookup){
+				repeatedLookup=true;
+			}else if(length()>=INDEX_MIN_FIELDS){
+				LazyNode[] table=new LazyNode[length()];
+				int i=0;
+				for(LazyNode child=root.child;child!=null;child=child.next){
+					table[i++]=child;
+				}
+				shape=LazyShape.find(source,table);
+				if(shape!=null){
+					fields=table;
+				}else{
+					buildIndex();
+				}
+			}
+		}
+		return index!=null || shape!=null;
+	}
+
+	// Index all fields in a table at most half full. Fields are added in
+	// order, so the first of several fields with the same name is the one
+	// found first when probing.
+	private void buildIndex(){
+		int size=Integer.highestOneBit(length())<<2;
+		LazyNode[] table=new LazyNode[size];
+		int[] hashes=new int[size];
+		int mask=size-1;
+		for(LazyNode child=root.child;child!=null;child=child.next){
+			int h=source.of(child).hash(child.startIndex,child.endIndex);
+			int slot=spread(h)&mask;
+			while(table[slot]!=null){
+				slot=(slot+1)&mask;
+			}
+			table[slot]=child;
+			hashes[slot]=h;
+		}
+		indexHashes=hashes;
+		index=table;
+	}
+
+	// Spread the bits of a hash so names differing only in their last
+	// characters do not end up in neighbouring slots
+	private static int spread(int h){
+		h*=0x9E3779B9;
+		return h^(h>>>16);
+	}
+
 	/*
 	// For debug purposes only
 	public String toString(int pad){
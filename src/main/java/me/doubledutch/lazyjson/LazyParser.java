@@ -1,6 +1,12 @@
 package me.doubledutch.lazyjson;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 
 public final class LazyParser{
 	// Read the comments on push before changing these!
@@ -8,14 +14,496 @@ public final class LazyParser{
 	private int STACK_SIZE=32;
 
 	protected LazyNode root;
-	protected final char[] cbuf;
-	protected final int length;
+	protected LazySource source;
+	// The parser reads either from a char array or from a buffer of UTF-8
+	// encoded bytes. Since every character that carries meaning for the
+	// structure of a JSON document is ascii, and no byte of a multi byte
+	// UTF-8 sequence is in the ascii range, the same tokenizer works for both
+	// with indexes being byte offsets for the latter.
+	private char[] cbuf;
+	private ByteBuffer bbuf;
+	// Any other sequence of characters is read through its charAt method
+	private CharSequence seq;
+	// The index after the last character to parse
+	protected int length;
 	private int n=0;
+	private boolean expectValue=false;
+
+	// When parsing incrementally, the data fed so far is collected in a
+	// growing buffer and tokenized as far as possible. Running out of data
+	// in the middle of a token suspends the parser, which then rolls back to
+	// the start of that token and continues from there on the next feed.
+	// The scan of a string, number or literal is not repeated though, how
+	// far it got is kept along with the start of its token and picked up
+	// again when the same token is consumed next time around.
+	private static final LazyException SUSPEND=new LazyException("Parser suspended waiting for more data");
+	private boolean incremental=false;
+	private boolean endOfInput=false;
+	private byte[] bytes;
+	// State saved at the start of every string, literal and number token
+	private int mark;
+	private boolean markExpectValue;
+	private LazyNode markTop;
+	private LazyNode markLastChild;
+	private int markChildCount;
+	private int markArenaSize;
+	// The scan state of the last token cut short, or of the last string
+	// consumed since a field name may be followed by more data to wait for
+	private int scanMark=-1;
+	private int scanPosition;
+	private int scanPhase;
+	private int scanEscapes;
+	private int scanSavings;
+	private long scanValue;
+
+	// Nodes are taken from the arena when one is set. A reusable parser has
+	// its own arena that is recycled for the next document after a reset,
+	// and also keeps its stack and the buffers holding the data.
+	protected LazyArena arena;
+	// The pool field names of parsed documents are taken from
+	private LazyKeyPool keyPool;
+	private boolean reusable=false;
+	private char[] chars;
+
+	// What the tokenizer builds, which is either a tree of nodes, a tape or
+	// nothing at all when a document is only checked. Only the tokens on the
+	// stack are needed for the latter two, and the token left in each slot
+	// of the stack is simply reused for the next one at the same depth. On a
+	// tape, such a token keeps the offset of its entry as its number.
+	private static final byte OUTPUT_NODES=0;
+	private static final byte OUTPUT_NONE=1;
+	private static final byte OUTPUT_TAPE=2;
+	private byte output=OUTPUT_NODES;
+
+	// When deferring, nested objects and arrays are only bracket matched
+	// and tokenized later on when they are first visited
+	protected boolean deferred=false;
+
+	// With a projection, fields of objects are only tokenized if a path can
+	// reach them. The projection for each object on the stack is kept at
+	// the same position in filters, null meaning everything is selected.
+	protected LazyProjection projection;
+	private LazyProjection[] filters;
+
+	// When parsing into a tape, entries are appended to a single int array
+	private int[] tape;
+	private int tapeSize;
 
 	protected LazyParser(final String source){
 		length=source.length();
 		cbuf=new char[length];
 		source.getChars(0,length,cbuf,0);
+		bbuf=null;
+		this.source=new LazySource(cbuf);
+	}
+
+	// The characters in a section of the array are parsed in place. Indexes
+	// are absolute positions into the array.
+	protected LazyParser(final char[] source,final int offset,final int length){
+		if(offset<0 || length<0 || offset+length>source.length){
+			throw new LazyException("Invalid offset or length for source");
+		}
+		cbuf=source;
+		bbuf=null;
+		n=offset;
+		this.length=offset+length;
+		this.source=new LazySource(cbuf);
+	}
+
+	// The characters of the sequence are parsed in place
+	protected LazyParser(final CharSequence source){
+		cbuf=null;
+		bbuf=null;
+		seq=source;
+		length=source.length();
+		this.source=new LazySource(seq);
+	}
+
+	protected LazyParser(final byte[] source,final int offset,final int length){
+		if(offset<0 || length<0 || offset+length>source.length){
+			throw new LazyException("Invalid offset or length for source");
+		}
+		cbuf=null;
+		bbuf=ByteBuffer.wrap(source);
+		n=offset;
+		this.length=offset+length;
+		this.source=new LazySource(bbuf);
+	}
+
+	// The bytes between the current position and the limit of the buffer are
+	// parsed in place. Indexes are absolute positions into the buffer.
+	protected LazyParser(final ByteBuffer source){
+		cbuf=null;
+		bbuf=source;
+		n=source.position();
+		length=source.limit();
+		this.source=new LazySource(bbuf);
+	}
+
+	// Create an incremental parser for a stream of documents that are read
+	// into a buffer of the given initial size
+	protected LazyParser(final int size){
+		cbuf=new char[size];
+		bbuf=null;
+		incremental=true;
+		this.source=new LazySource(cbuf);
+	}
+
+	// Create a parser for a range of the given source
+	protected LazyParser(final LazySource source,final int start,final int end){
+		cbuf=source.cbuf;
+		bbuf=source.bbuf;
+		seq=source.seq;
+		this.source=source;
+		n=start;
+		length=end;
+	}
+
+	// Create a parser for a range of the same source as the given parser
+	private LazyParser(final LazyParser parent,final int start,final int end){
+		cbuf=parent.cbuf;
+		bbuf=parent.bbuf;
+		seq=parent.seq;
+		source=parent.source;
+		n=start;
+		length=end;
+	}
+
+	/**
+	 * Create a new reusable parser. It can either parse complete documents
+	 * through the parse methods, or be used incrementally with the JSON data
+	 * handed to it in chunks as it arrives. In the latter case the data is
+	 * tokenized as far as possible on each call to feed, so malformed data is
+	 * rejected as early as possible. A chunk boundary may fall anywhere,
+	 * including in the middle of a token. All chunks of a document must be
+	 * either bytes or characters, not a mix of both.
+	 * <p>
+	 * The parser keeps its stack, its buffers and the nodes created for a
+	 * document, and reuses them for the next document after a reset. Once
+	 * warmed up with documents of similar size it parses with next to no
+	 * allocation. In return, an element returned by the parser may only be
+	 * used until the parser is reset or used to parse another document.
+	 * A parser must not be used by more than one thread at a time.
+	 */
+	public LazyParser(){
+		incremental=true;
+		reusable=true;
+		arena=new LazyArena();
+	}
+
+	/**
+	 * Discard the current document and prepare the parser for the next one.
+	 * Elements returned for the current document must no longer be used.
+	 */
+	public void reset(){
+		root=null;
+		source=null;
+		cbuf=null;
+		bbuf=null;
+		seq=null;
+		n=0;
+		length=0;
+		expectValue=false;
+		endOfInput=false;
+		scanMark=-1;
+		stackTop=null;
+		stackPointer=1;
+		if(reusable){
+			arena.recycle();
+		}
+	}
+
+	/**
+	 * Reset the parser and parse a complete document from a string. The
+	 * characters are copied into a buffer kept by the parser.
+	 *
+	 * @param str the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the string could not be parsed
+	 */
+	public LazyElement parse(String str) throws LazyException{
+		checkReusable();
+		int size=str.length();
+		if(chars==null || size>chars.length){
+			chars=new char[grow(chars==null?0:chars.length,size)];
+		}
+		str.getChars(0,size,chars,0);
+		cbuf=chars;
+		length=size;
+		source=new LazySource(cbuf);
+		return parseDocument();
+	}
+
+	/**
+	 * Reset the parser and parse a complete document from a section of a
+	 * character array. The characters are parsed in place and must not be
+	 * modified while the returned element is in use.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first character to parse
+	 * @param length the number of characters to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement parse(char[] raw,int offset,int length) throws LazyException{
+		if(offset<0 || length<0 || offset+length>raw.length){
+			throw new LazyException("Invalid offset or length for source");
+		}
+		checkReusable();
+		cbuf=raw;
+		n=offset;
+		this.length=offset+length;
+		source=new LazySource(cbuf);
+		return parseDocument();
+	}
+
+	/**
+	 * Reset the parser and parse a complete document from a section of UTF-8
+	 * encoded data. The data is parsed in place and must not be modified
+	 * while the returned element is in use.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement parse(byte[] raw,int offset,int length) throws LazyException{
+		if(offset<0 || length<0 || offset+length>raw.length){
+			throw new LazyException("Invalid offset or length for source");
+		}
+		return parse(ByteBuffer.wrap(raw,offset,length));
+	}
+
+	/**
+	 * Reset the parser and parse a complete document from the UTF-8 encoded
+	 * data between the position and limit of a buffer. The data is parsed in
+	 * place and must not be modified while the returned element is in use.
+	 *
+	 * @param raw the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement parse(ByteBuffer raw) throws LazyException{
+		checkReusable();
+		bbuf=raw;
+		n=raw.position();
+		length=raw.limit();
+		source=new LazySource(bbuf);
+		return parseDocument();
+	}
+
+	private void checkReusable() throws LazyException{
+		if(!reusable){
+			throw new LazyException("Parser is not reusable");
+		}
+		reset();
+		// A complete document is never waiting for more data. This also
+		// stops feed from being used until the next reset.
+		endOfInput=true;
+	}
+
+	private LazyElement parseDocument() throws LazyException{
+		tokenize();
+		return element();
+	}
+
+	/**
+	 * Take the field names of all documents parsed from now on from the given
+	 * pool. Documents with the same fields then share the strings for their
+	 * field names.
+	 *
+	 * @param pool the pool to use, or null to stop using a pool
+	 */
+	public void setKeyPool(LazyKeyPool pool){
+		keyPool=pool;
+	}
+
+	private LazyElement element(){
+		source.keyPool=keyPool;
+		if(root.type==LazyNode.ARRAY){
+			return new LazyArray(root,source);
+		}
+		return new LazyObject(root,source);
+	}
+
+	// Create a new node, or take one from the arena if there is one
+	private LazyNode createNode(byte type,int index){
+		if(arena==null){
+			return new LazyNode(type,index);
+		}
+		return arena.node(type,index);
+	}
+
+	/**
+	 * Add a chunk of UTF-8 encoded data to an incremental parser and tokenize
+	 * as far as the data allows. The remaining bytes of the buffer are
+	 * consumed.
+	 *
+	 * @param chunk the next chunk of data
+	 * @throws LazyException if the data fed so far can not be valid JSON
+	 */
+	public void feed(ByteBuffer chunk) throws LazyException{
+		checkFeed(false);
+		int size=chunk.remaining();
+		if(bytes==null || length+size>bytes.length){
+			byte[] newBytes=new byte[grow(bytes==null?0:bytes.length,length+size)];
+			if(bytes!=null){
+				System.arraycopy(bytes,0,newBytes,0,length);
+			}
+			bytes=newBytes;
+			bbuf=null;
+		}
+		if(bbuf==null){
+			bbuf=ByteBuffer.wrap(bytes);
+		}
+		chunk.get(bytes,length,size);
+		length+=size;
+		resume();
+	}
+
+	/**
+	 * Add a chunk of characters to an incremental parser and tokenize as far
+	 * as the data allows.
+	 *
+	 * @param chunk the array holding the next chunk of data
+	 * @param offset the index of the first character of the chunk
+	 * @param size the number of characters in the chunk
+	 * @throws LazyException if the data fed so far can not be valid JSON
+	 */
+	public void feed(char[] chunk,int offset,int size) throws LazyException{
+		checkFeed(true);
+		if(chars==null || length+size>chars.length){
+			char[] newChars=new char[grow(chars==null?0:chars.length,length+size)];
+			if(chars!=null){
+				System.arraycopy(chars,0,newChars,0,length);
+			}
+			chars=newChars;
+		}
+		cbuf=chars;
+		System.arraycopy(chunk,offset,cbuf,length,size);
+		length+=size;
+		resume();
+	}
+
+	/**
+	 * Signal that all data has been fed to an incremental parser and return
+	 * the parsed document.
+	 *
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement endOfInput() throws LazyException{
+		if(!incremental || endOfInput){
+			throw new LazyException("Parser is not accepting input");
+		}
+		endOfInput=true;
+		resume();
+		if(root==null || size()!=0){
+			throw new LazyException("Unexpected end of JSON data",n);
+		}
+		if(cbuf!=null){
+			source=new LazySource(cbuf);
+		}else{
+			source=new LazySource(bbuf);
+		}
+		return element();
+	}
+
+	private void checkFeed(boolean characters) throws LazyException{
+		if(!incremental || endOfInput){
+			throw new LazyException("Parser is not accepting input");
+		}
+		if((characters && bbuf!=null) || (!characters && cbuf!=null)){
+			throw new LazyException("Can not mix byte and character input");
+		}
+	}
+
+	// Double the buffer size until the required size fits
+	private static int grow(int size,int required){
+		if(size<1024){
+			size=1024;
+		}
+		while(size<required){
+			size=size<<1;
+			if(size<0){
+				return required;
+			}
+		}
+		return size;
+	}
+
+	// Tokenize as far as the data fed so far allows
+	private void resume() throws LazyException{
+		try{
+			if(root==null){
+				consumeRoot();
+			}
+			if(root.endIndex==-1){
+				consumeTokens();
+			}
+			if(root.endIndex>-1){
+				consumeTrailingWhiteSpace();
+			}
+		}catch(LazyException e){
+			if(e!=SUSPEND){
+				throw e;
+			}
+			if(root!=null){
+				rollbackToken();
+			}
+		}
+	}
+
+	// Save the parser state before starting on a token that might be cut
+	// short by the end of the data fed so far
+	private void markToken(){
+		mark=n;
+		markExpectValue=expectValue;
+		markTop=stackTop;
+		markLastChild=stackTop.lastChild;
+		markChildCount=stackTop.childCount;
+		if(arena!=null){
+			markArenaSize=arena.size();
+		}
+	}
+
+	// Remove any trace of a partially consumed token and rewind to its start
+	private void rollbackToken(){
+		// A field token may have been pushed onto the stack
+		if(stackTop!=markTop){
+			drop();
+		}
+		markTop.lastChild=markLastChild;
+		markTop.childCount=markChildCount;
+		if(markLastChild==null){
+			markTop.child=null;
+		}else{
+			markLastChild.next=null;
+		}
+		expectValue=markExpectValue;
+		if(arena!=null){
+			arena.truncate(markArenaSize);
+		}
+		n=mark;
+	}
+
+	// Read a single character from the source. Reading past the end of the
+	// data we were asked to parse means the document was cut short.
+	private final char charAt(final int index){
+		if(index>=length){
+			if(incremental && !endOfInput){
+				throw SUSPEND;
+			}
+			throw new LazyException("Unexpected end of JSON data",index);
+		}
+		if(cbuf!=null){
+			return cbuf[index];
+		}
+		if(bbuf!=null){
+			return (char)(bbuf.get(index)&0xFF);
+		}
+		return seq.charAt(index);
 	}
 
 	// The parser uses a crude stack while parsing that maintains a reference
@@ -27,7 +515,9 @@ public final class LazyParser{
 
 	// Push a token onto the stack and attach it to the previous top as a child
 	private void push(final LazyNode token){
-		stackTop.addChild(token);
+		if(output==OUTPUT_NODES){
+			stackTop.addChild(token);
+		}
 		// The stack allocation strategy here is to increase it in increments
 		// of a power of two. This lets us check when all low bits are set and
 		// its time to increase the stack again.
@@ -38,6 +528,9 @@ public final class LazyParser{
 			System.arraycopy(stack,0,newStack,0,STACK_SIZE);
 			STACK_SIZE=STACK_SIZE+STACK_INCREASE+1;
 			stack=newStack;
+			if(filters!=null){
+				filters=Arrays.copyOf(filters,STACK_SIZE);
+			}
 		}
 		stack[stackPointer++]=token;
 		stackTop=token;
@@ -46,6 +539,9 @@ public final class LazyParser{
 	// Pop a token off the stack and reset the stackTop pointer
 	private LazyNode pop(){
 		LazyNode value=stackTop;
+		if(output==OUTPUT_TAPE && value!=null){
+			closeTape(value);
+		}
 		stackPointer--;
 		if(stackPointer>0){
 			stackTop=stack[stackPointer-1];
@@ -55,6 +551,9 @@ public final class LazyParser{
 
 	// Pop a token off the stack and reset the stackTop pointer without returning the value
 	private void drop(){
+		if(output==OUTPUT_TAPE){
+			closeTape(stackTop);
+		}
 		stackPointer--;
 		stackTop=stack[stackPointer-1];
 	}
@@ -65,96 +564,321 @@ public final class LazyParser{
 
 	// Utility method to consume sections of whitespace
 	private final void consumeWhiteSpace(){
-		char c=cbuf[n];
+		char c=charAt(n);
 		while(c==' '|| c=='\n' || c=='\t' || c=='\r'){
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 		}
 	}
 
 	// Attempt to advance and consume any whitespace
 	// Roll back the index counter to prepare for another iteration
-	// through the main loop afterwards.
+	// through the main loop afterwards. Running out of data is left for the
+	// main loop to deal with.
 	private final void tryToConsumeWhiteSpace(){
 		n++;
-		consumeWhiteSpace();
+		while(n<length){
+			char c=charAt(n);
+			if(!(c==' '|| c=='\n' || c=='\t' || c=='\r')){
+				break;
+			}
+			n++;
+		}
 		n--;
 	}
 
-	// Consume all characters in a string and correctly mark the stackTop
-	// element if an escape character is found
-	private final boolean consumeString(){
-		boolean escaped=false;
-		n++;
-		char c=cbuf[n];
-		while(c!='"'){
-			if(c=='\\'){
+	// Consume all characters in a string and return how many characters
+	// shorter the string gets when its escape sequences are replaced, which
+	// is zero if there are none. For UTF-8 data this includes the characters
+	// saved by decoding multi byte sequences, so the result is the exact
+	// difference between the length of the raw data and the decoded value.
+	private final int consumeString(){
+		int start=n;
+		int escapes=0;
+		int savings=0;
+		if(start==scanMark){
+			// Continue where the scan of this string left off
+			n=scanPosition;
+			escapes=scanEscapes;
+			savings=scanSavings;
+		}else{
+			n++;
+		}
+		try{
+			savings+=skipStringCharacters();
+			char c=charAt(n);
+			while(c!='"'){
+				if(c=='\\'){
+					// Leave n at the backslash until the whole escape sequence
+					// is available, so the scan can be continued from n
+					c=charAt(n+1);
+					if(c=='u'){
+						// A unicode escape turns six characters into one
+						for(int i=n+2;i<n+6;i++){
+							char h=charAt(i);
+							if(h>=128 || LazyNode.HEX_VALUES[h]<0){
+								throw new LazyException("Invalid unicode escape sequence",n);
+							}
+						}
+						escapes+=5;
+						n+=5;
+					}else if(c=='"' || c=='\\' || c=='/' || c=='b' || c=='f' || c=='n' || c=='r' || c=='t'){
+						// All other escapes turn two characters into one
+						escapes++;
+						n++;
+					}else{
+						throw new LazyException("Invalid escape sequence",n);
+					}
+				}
 				n++;
-				c=cbuf[n];
-				// TODO: validate escape value
-				escaped=true;
+				savings+=skipStringCharacters();
+				c=charAt(n);
 			}
-			n++;
-			c=cbuf[n];
+		}catch(LazyException e){
+			if(e==SUSPEND){
+				saveString(start,escapes,savings);
+			}
+			throw e;
 		}
-		return escaped;
+		if(incremental){
+			saveString(start,escapes,savings);
+		}
+		return escapes==0?0:escapes+savings;
 	}
 
-	// Consume all characters in a number and throw an exception if the format
-	// of the number does not validate correctly
-	private final boolean consumeNumber(char c) throws LazyException{
-		boolean floatChar=false;
-		if(c=='-'){
-			// If the number started with a minus sign it must be followed by at least one digit
-			n++;
-			c=cbuf[n];
-			if(c<'0' || c>'9'){
-				throw new LazyException("Digit expected",n);
+	private void saveString(int start,int escapes,int savings){
+		scanMark=start;
+		scanPosition=n;
+		scanEscapes=escapes;
+		scanSavings=savings;
+	}
+
+	// Byte patterns used to look for quotes and backslashes in eight bytes
+	// at a time
+	private static final long ONES=0x0101010101010101L;
+	private static final long HIGH_BITS=0x8080808080808080L;
+	private static final long QUOTES=ONES*'"';
+	private static final long BACKSLASHES=ONES*'\\';
+
+	// Advance n past the characters of a string up to the next quote or
+	// backslash, or up to the end of the available data. Only those two
+	// characters matter inside a string, so there is no need to look at the
+	// rest one at a time through charAt. For UTF-8 data, returns how many
+	// fewer characters than bytes the skipped data decodes to.
+	private final int skipStringCharacters(){
+		if(cbuf!=null){
+			while(n<length){
+				char c=cbuf[n];
+				if(c=='"' || c=='\\'){
+					return 0;
+				}
+				n++;
 			}
+			return 0;
 		}
-		n++;
-		c=cbuf[n];
-		while(!(c<'0' || c>'9')){
-			n++;
-			c=cbuf[n];
+		if(bbuf==null){
+			while(n<length){
+				char c=seq.charAt(n);
+				if(c=='"' || c=='\\'){
+					return 0;
+				}
+				n++;
+			}
+			return 0;
 		}
-		if(c=='.'){
-			floatChar=true;
-			// The fractional part must contain one or more digits
-			n++;
-			c=cbuf[n];
-			if(c<'0' || c>'9'){
-				throw new LazyException("Digit expected",n);
+		int savings=0;
+		// Load eight bytes at a time into a long and xor them with the byte
+		// we are looking for, which turns any occurrence of it into a zero
+		// byte. Subtracting one from every byte then sets the high bit of a
+		// byte that was zero, and masking with the inverted word drops high
+		// bits that were set to begin with. The test only tells us if there
+		// is a match in the word, not where, so that does not depend on the
+		// byte order of the buffer.
+		while(n<=length-8){
+			long word=bbuf.getLong(n);
+			long quotes=word^QUOTES;
+			long backslashes=word^BACKSLASHES;
+			if(((((quotes-ONES)&~quotes)|((backslashes-ONES)&~backslashes))&HIGH_BITS)!=0){
+				break;
 			}
-			n++;
-			c=cbuf[n];
-			while(!(c<'0' || c>'9')){
-				n++;
-				c=cbuf[n];
+			if((word&HIGH_BITS)!=0){
+				// Every continuation byte of a multi byte sequence saves a
+				// character, except for one in the sequences of four bytes
+				// that decode to a surrogate pair. Continuation bytes start
+				// with the bits 10, the first byte of four with 11110.
+				long continuations=word&~(word<<1)&HIGH_BITS;
+				long fourByteStarts=word&(word<<1)&(word<<2)&(word<<3)&~(word<<4)&HIGH_BITS;
+				savings+=Long.bitCount(continuations)-Long.bitCount(fourByteStarts);
 			}
+			n+=8;
 		}
-		if(c=='e' || c=='E'){
-			floatChar=true;
+		while(n<length){
+			byte b=bbuf.get(n);
+			if(b=='"' || b=='\\'){
+				return savings;
+			}
+			if((b&0xC0)==0x80){
+				savings++;
+			}else if((b&0xF8)==0xF0){
+				savings--;
+			}
 			n++;
-			c=cbuf[n];
-			if(c=='-' || c=='+'){
-				// We must have at least one digit following this
+		}
+		return savings;
+	}
+
+	// The class and value of the integer part of the last number consumed
+	private byte numberClass;
+	private long number;
+
+	// The parts of a number in the order they are scanned
+	private static final int NUMBER_SIGN=0;
+	private static final int NUMBER_FIRST_DIGIT=1;
+	private static final int NUMBER_DIGITS=2;
+	private static final int NUMBER_FRACTION_FIRST=3;
+	private static final int NUMBER_FRACTION=4;
+	private static final int NUMBER_EXPONENT_SIGN=5;
+	private static final int NUMBER_EXPONENT_FIRST=6;
+	private static final int NUMBER_EXPONENT=7;
+
+	// Consume all characters in a number and throw an exception if the format
+	// of the number does not validate correctly. The number is scanned one
+	// part at a time with n at the next character to look at, so a scan cut
+	// short by the end of the data can continue in the part it was in.
+	private final boolean consumeNumber(char c) throws LazyException{
+		int start=n;
+		int phase=NUMBER_SIGN;
+		long value=0;
+		if(start==scanMark){
+			n=scanPosition;
+			phase=scanPhase;
+			value=scanValue;
+		}
+		// Accumulate the negative value, which has the larger range. Numbers
+		// with 19 or more digits might not fit in a long, they are left for
+		// the token to classify if it is ever read.
+		boolean sign=c=='-';
+		int digitIndex=sign?start+1:start;
+		try{
+			if(phase==NUMBER_SIGN){
+				if(sign){
+					n++;
+				}
+				phase=NUMBER_FIRST_DIGIT;
+			}
+			if(phase==NUMBER_FIRST_DIGIT){
+				// If the number started with a minus sign it must be followed by at least one digit
+				c=charAt(n);
+				if(c<'0' || c>'9'){
+					throw new LazyException("Digit expected",n);
+				}
+				value='0'-c;
 				n++;
-				c=cbuf[n];
+				phase=NUMBER_DIGITS;
+			}
+			if(phase==NUMBER_DIGITS){
+				c=charAt(n);
+				while(!(c<'0' || c>'9')){
+					value=value*10+('0'-c);
+					n++;
+					c=charAt(n);
+				}
+				if(n-digitIndex>18){
+					numberClass=LazyNode.NUMBER_UNKNOWN;
+				}else{
+					number=sign?value:-value;
+					numberClass=(number>=Integer.MIN_VALUE && number<=Integer.MAX_VALUE)?LazyNode.NUMBER_INT:LazyNode.NUMBER_LONG;
+				}
+				if(c=='.'){
+					n++;
+					phase=NUMBER_FRACTION_FIRST;
+				}else if(c=='e' || c=='E'){
+					n++;
+					phase=NUMBER_EXPONENT_SIGN;
+				}else{
+					return false;
+				}
+			}
+			if(phase==NUMBER_FRACTION_FIRST){
+				// The fractional part must contain one or more digits
+				c=charAt(n);
 				if(c<'0' || c>'9'){
 					throw new LazyException("Digit expected",n);
 				}
-			}else if(c<'0' || c>'9'){
-				throw new LazyException("Exponential part expected",n);
+				n++;
+				phase=NUMBER_FRACTION;
 			}
-			n++;
-			c=cbuf[n];
+			if(phase==NUMBER_FRACTION){
+				c=charAt(n);
+				while(!(c<'0' || c>'9')){
+					n++;
+					c=charAt(n);
+				}
+				if(c=='e' || c=='E'){
+					n++;
+					phase=NUMBER_EXPONENT_SIGN;
+				}else{
+					return true;
+				}
+			}
+			if(phase==NUMBER_EXPONENT_SIGN){
+				c=charAt(n);
+				if(c=='-' || c=='+'){
+					// We must have at least one digit following this
+					n++;
+				}else if(c<'0' || c>'9'){
+					throw new LazyException("Exponential part expected",n);
+				}
+				phase=NUMBER_EXPONENT_FIRST;
+			}
+			if(phase==NUMBER_EXPONENT_FIRST){
+				c=charAt(n);
+				if(c<'0' || c>'9'){
+					throw new LazyException("Digit expected",n);
+				}
+				n++;
+				phase=NUMBER_EXPONENT;
+			}
+			c=charAt(n);
 			while(!(c<'0' || c>'9')){
 				n++;
-				c=cbuf[n];
+				c=charAt(n);
+			}
+			return true;
+		}catch(LazyException e){
+			if(e==SUSPEND){
+				scanMark=start;
+				scanPosition=n;
+				scanPhase=phase;
+				scanValue=value;
+			}
+			throw e;
+		}
+	}
+
+	// Move n from the first character of a literal to its last character,
+	// or to the first character that does not match
+	private final boolean consumeLiteral(final String literal){
+		int start=n;
+		if(start==scanMark){
+			n=scanPosition;
+		}
+		try{
+			while(n-start<literal.length()-1){
+				if(charAt(n+1)!=literal.charAt(n+1-start)){
+					n++;
+					return false;
+				}
+				n++;
+			}
+		}catch(LazyException e){
+			if(e==SUSPEND){
+				scanMark=start;
+				scanPosition=n;
 			}
+			throw e;
 		}
-		return floatChar;
+		return true;
 	}
 
 	// This should probably be renamed to parse. This method started out as a
@@ -172,28 +896,531 @@ public final class LazyParser{
 	// again. While it is consistent and readable, it needlesly maintains the
 	// stackTop pointer and increments and decrements the stackTopPointer int
 	protected void tokenize() throws LazyException{
+		consumeRoot();
+		consumeTokens();
+		if(size()!=0){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+		if(expectValue){
+			throw new LazyException("Unexpected trailing comma");
+		}
+		consumeTrailingWhiteSpace();
+	}
+
+	// The smallest number of characters handed to a single worker when
+	// tokenizing in parallel
+	private static final int PARALLEL_MIN_RANGE=16384;
+
+	// Tokenize a large top level array by splitting it into ranges of whole
+	// elements which are tokenized in parallel and stitched together again.
+	// Objects and small arrays are simply tokenized on the calling thread.
+	protected void tokenizeParallel(ForkJoinPool pool) throws LazyException{
+		int begin=n;
+		consumeWhiteSpace();
+		int start=n;
+		int end=length-1;
+		while(end>start && isWhiteSpace(charAt(end))){
+			end--;
+		}
+		int parts=Math.min(pool.getParallelism()*4,(end-start)/PARALLEL_MIN_RANGE);
+		if(pool.getParallelism()<2 || parts<2 || charAt(start)!='[' || charAt(end)!=']'){
+			tokenize();
+			return;
+		}
+		try{
+			int[] splits=findSplits(pool,start+1,end,parts);
+			// Element ranges run from the character after one split up to and
+			// including the next split. The first range starts after the
+			// opening bracket and the last one includes the closing bracket.
+			final LazyParser[] ranges=new LazyParser[splits.length+1];
+			int from=start+1;
+			for(int i=0;i<splits.length;i++){
+				ranges[i]=new LazyParser(this,from,splits[i]+1);
+				from=splits[i]+1;
+			}
+			ranges[splits.length]=new LazyParser(this,from,end+1);
+			List<RecursiveAction> tasks=new ArrayList<RecursiveAction>(ranges.length);
+			for(int i=0;i<ranges.length;i++){
+				final LazyParser range=ranges[i];
+				final boolean afterComma=i>0;
+				final boolean last=i==ranges.length-1;
+				tasks.add(new RecursiveAction(){
+					protected void compute(){
+						range.tokenizeElements(afterComma,last);
+					}
+				});
+			}
+			pool.invoke(new InvokeAll(tasks));
+			root=LazyNode.cArray(start);
+			for(int i=0;i<ranges.length;i++){
+				LazyNode elements=ranges[i].root;
+				if(elements.child==null){
+					continue;
+				}
+				if(root.child==null){
+					root.child=elements.child;
+				}else{
+					root.lastChild.next=elements.child;
+				}
+				root.lastChild=elements.lastChild;
+				root.childCount+=elements.childCount;
+			}
+			root.endIndex=end+1;
+			n=length;
+		}catch(LazyException e){
+			// Start over on the calling thread to report the error exactly
+			// as a sequential parse would
+			n=begin;
+			stackPointer=1;
+			stackTop=null;
+			root=null;
+			tokenize();
+		}
+	}
+
+	// Find the positions of commas separating elements of the top level
+	// array, roughly one for each of the given number of parts.
+	//
+	// To know if a comma is a separator at the top level we need to know if
+	// it is inside a string and how deeply it is nested, which depends on
+	// everything in front of it. Each part is therefore first scanned in
+	// parallel to count the quotes that delimit strings and to sum up the
+	// change in nesting level - once assuming the part starts outside a
+	// string and once assuming it starts inside one. Whether a quote
+	// delimits a string can be decided locally, since it does exactly when
+	// it is preceded by an even number of backslashes. A quick sequential
+	// pass over the counts then gives the real state at the start of each
+	// part, after which every part looks for its first separator in parallel.
+	private int[] findSplits(ForkJoinPool pool,final int start,final int end,final int parts) throws LazyException{
+		final int partSize=(end-start)/parts;
+		final int[] quotes=new int[parts];
+		final int[] outsideDepth=new int[parts];
+		final int[] insideDepth=new int[parts];
+		List<RecursiveAction> tasks=new ArrayList<RecursiveAction>(parts);
+		for(int i=0;i<parts;i++){
+			final int part=i;
+			tasks.add(new RecursiveAction(){
+				protected void compute(){
+					int from=start+part*partSize;
+					int to=part==parts-1?end:from+partSize;
+					boolean inString=false;
+					int count=0;
+					int outside=0;
+					int inside=0;
+					for(int i=from;i<to;i++){
+						char c=charAt(i);
+						if(c=='"'){
+							if(!isEscaped(i)){
+								inString=!inString;
+								count++;
+							}
+						}else if(c=='{' || c=='['){
+							if(inString){
+								inside++;
+							}else{
+								outside++;
+							}
+						}else if(c=='}' || c==']'){
+							if(inString){
+								inside--;
+							}else{
+								outside--;
+							}
+						}
+					}
+					quotes[part]=count;
+					outsideDepth[part]=outside;
+					insideDepth[part]=inside;
+				}
+			});
+		}
+		pool.invoke(new InvokeAll(tasks));
+		final boolean[] startInString=new boolean[parts];
+		final int[] startDepth=new int[parts];
+		boolean inString=false;
+		int depth=1;
+		for(int i=0;i<parts;i++){
+			startInString[i]=inString;
+			startDepth[i]=depth;
+			depth+=inString?insideDepth[i]:outsideDepth[i];
+			inString=inString^((quotes[i]&1)==1);
+		}
+		if(inString || depth!=1){
+			throw new LazyException("Unbalanced JSON data");
+		}
+		final int[] found=new int[parts];
+		tasks.clear();
+		for(int i=1;i<parts;i++){
+			final int part=i;
+			tasks.add(new RecursiveAction(){
+				protected void compute(){
+					boolean inString=startInString[part];
+					int depth=startDepth[part];
+					found[part]=-1;
+					for(int i=start+part*partSize;i<end;i++){
+						char c=charAt(i);
+						if(c=='"'){
+							if(!isEscaped(i)){
+								inString=!inString;
+							}
+						}else if(!inString){
+							if(c=='{' || c=='['){
+								depth++;
+							}else if(c=='}' || c==']'){
+								depth--;
+							}else if(c==',' && depth==1){
+								found[part]=i;
+								return;
+							}
+						}
+					}
+				}
+			});
+		}
+		pool.invoke(new InvokeAll(tasks));
+		// A single large element can span several parts, in which case they
+		// find the same separator
+		int[] splits=new int[parts-1];
+		int count=0;
+		for(int i=1;i<parts;i++){
+			if(found[i]>-1 && (count==0 || found[i]>splits[count-1])){
+				splits[count++]=found[i];
+			}
+		}
+		return Arrays.copyOf(splits,count);
+	}
+
+	// A quote is escaped if it is preceded by an odd number of backslashes
+	private boolean isEscaped(int index){
+		boolean escaped=false;
+		while(index>0 && charAt(index-1)=='\\'){
+			escaped=!escaped;
+			index--;
+		}
+		return escaped;
+	}
+
+	private static boolean isWhiteSpace(char c){
+		return c==' '|| c=='\n' || c=='\t' || c=='\r';
+	}
+
+	// Tokenize the values in a range of an array, attaching them to an
+	// array node that is not part of the source. The range ends with either
+	// the comma in front of the next range or the closing bracket.
+	private void tokenizeElements(boolean afterComma,boolean last) throws LazyException{
+		root=LazyNode.cArray(n);
+		stack[stackPointer++]=root;
+		stackTop=root;
+		expectValue=afterComma;
+		consumeTokens();
+		if(last){
+			if(stackTop!=null || n!=length){
+				throw new LazyException("Unexpected end of array",n);
+			}
+		}else if(stackPointer!=2){
+			throw new LazyException("Unexpected end of array",n);
+		}
+	}
+
+	// Fork a set of tasks and wait for all of them to finish
+	private static final class InvokeAll extends RecursiveAction{
+		private static final long serialVersionUID=1L;
+
+		private final List<RecursiveAction> tasks;
+
+		protected InvokeAll(List<RecursiveAction> tasks){
+			this.tasks=tasks;
+		}
+
+		protected void compute(){
+			ForkJoinTask.invokeAll(tasks);
+		}
+	}
+
+	// Tokenize a sequence of newline separated documents as found in JSON
+	// Lines and NDJSON data. The stack is reused between documents and all
+	// documents share the same source.
+	protected List<LazyNode> tokenizeLines() throws LazyException{
+		List<LazyNode> roots=new ArrayList<LazyNode>();
+		for(;;){
+			// Skip whitespace and blank lines in front of the next document
+			while(n<length){
+				char c=charAt(n);
+				if(!(c==' '|| c=='\n' || c=='\t' || c=='\r')){
+					break;
+				}
+				n++;
+			}
+			if(n==length){
+				return roots;
+			}
+			consumeRoot();
+			consumeTokens();
+			if(size()!=0){
+				throw new LazyException("Unexpected end of JSON data");
+			}
+			roots.add(root);
+			// The rest of the line must be empty
+			for(;n<length;n++){
+				char c=charAt(n);
+				if(c=='\n'){
+					break;
+				}
+				if(!(c==' '|| c=='\t' || c=='\r')){
+					throw new LazyException("Expected new line after JSON document",n);
+				}
+			}
+		}
+	}
+
+	// Tokenize the next document of a sequence of concatenated documents,
+	// starting where the previous document ended. Documents may follow each
+	// other directly or be separated by whitespace. Returns null when only
+	// whitespace is left. An incremental parser suspends when it runs out of
+	// data and continues with the same document on the next call.
+	protected LazyNode tokenizeNext() throws LazyException{
+		if(root==null || root.endIndex>-1){
+			while(n<length){
+				char c=charAt(n);
+				if(!(c==' '|| c=='\n' || c=='\t' || c=='\r')){
+					break;
+				}
+				n++;
+			}
+			if(n==length){
+				if(incremental && !endOfInput){
+					throw SUSPEND;
+				}
+				return null;
+			}
+			consumeRoot();
+		}
+		try{
+			consumeTokens();
+		}catch(LazyException e){
+			if(e==SUSPEND){
+				rollbackToken();
+			}
+			throw e;
+		}
+		if(root.endIndex==-1){
+			if(incremental && !endOfInput){
+				throw SUSPEND;
+			}
+			throw new LazyException("Unexpected end of JSON data",n);
+		}
+		if(expectValue){
+			throw new LazyException("Unexpected trailing comma");
+		}
+		return root;
+	}
+
+	// Return the next document of a sequence of concatenated documents, or
+	// null if there are no more. For a stream, data is read from the reader
+	// whenever the parser runs out of data. A full buffer is replaced by a
+	// larger one holding only the unfinished document, so elements returned
+	// earlier keep the data they were parsed from. The tokens of the
+	// unfinished document are moved along with its data rather than parsed
+	// again.
+	protected LazyElement nextElement(Reader reader) throws IOException,LazyException{
+		for(;;){
+			try{
+				if(tokenizeNext()==null){
+					return null;
+				}
+				return element();
+			}catch(LazyException e){
+				if(e!=SUSPEND){
+					throw e;
+				}
+			}
+			if(length==cbuf.length){
+				int start=(root==null || root.endIndex>-1)?n:root.startIndex;
+				char[] newBuf=new char[grow(0,(length-start)<<1)];
+				System.arraycopy(cbuf,start,newBuf,0,length-start);
+				length-=start;
+				n-=start;
+				if(scanMark>=start){
+					scanMark-=start;
+					scanPosition-=start;
+				}else{
+					scanMark=-1;
+				}
+				if(root!=null && root.endIndex==-1){
+					shift(root,-start);
+				}
+				cbuf=newBuf;
+				source=new LazySource(cbuf);
+			}
+			int size=reader.read(cbuf,length,cbuf.length-length);
+			if(size==-1){
+				endOfInput=true;
+			}else{
+				length+=size;
+			}
+		}
+	}
+
+	// Tokenize the single value of any type starting at the given index,
+	// leaving n after it. This is used for the values of a document mapped
+	// in segments, with more set unless the data runs up to the end of the
+	// document. Running out of data then means the value does not fit and
+	// null is returned, after which the parser must not be used again.
+	protected LazyNode tokenizeValue(int start,boolean more) throws LazyException{
+		n=start;
+		incremental=more;
+		scanMark=-1;
+		stackTop=null;
+		stackPointer=1;
+		try{
+			char c=charAt(n);
+			if(c=='{' || c=='['){
+				consumeRoot();
+				consumeTokens();
+				if(root.endIndex==-1){
+					if(more){
+						return null;
+					}
+					throw new LazyException("Unexpected end of JSON data",n);
+				}
+				return root;
+			}
+			LazyNode token;
+			if(c=='"'){
+				token=createNode(LazyNode.VALUE_STRING,n+1);
+				token.number=consumeString();
+				if(token.number>0){
+					token.type=LazyNode.VALUE_ESTRING;
+				}
+			}else if(c=='n' && consumeLiteral("null")){
+				token=createNode(LazyNode.VALUE_NULL,n);
+			}else if(c=='t' && consumeLiteral("true")){
+				token=createNode(LazyNode.VALUE_TRUE,n);
+			}else if(c=='f' && consumeLiteral("false")){
+				token=createNode(LazyNode.VALUE_FALSE,n);
+			}else if(c=='-' || !(c<'0' || c>'9')){
+				token=createNode(LazyNode.VALUE_INTEGER,n);
+				if(consumeNumber(c)){
+					token.type=LazyNode.VALUE_FLOAT;
+				}else{
+					token.numberClass=numberClass;
+					token.number=number;
+				}
+				token.endIndex=n;
+				return token;
+			}else{
+				throw new LazyException("Syntax error",n);
+			}
+			token.endIndex=n;
+			n++;
+			return token;
+		}catch(LazyException e){
+			if(e!=SUSPEND){
+				throw e;
+			}
+			return null;
+		}
+	}
+
+	// Tokenize the name of a field starting at the given index along with
+	// the separator and any whitespace after it, the same way as
+	// tokenizeValue
+	protected LazyNode tokenizeField(int start,boolean more) throws LazyException{
+		n=start;
+		incremental=more;
+		scanMark=-1;
+		try{
+			LazyNode token=createNode(LazyNode.FIELD,n+1);
+			consumeString();
+			token.endIndex=n;
+			n++;
+			consumeWhiteSpace();
+			if(charAt(n)!=':'){
+				throw new LazyException("Unexpected character! Was expecting field separator ':'",n);
+			}
+			n++;
+			consumeWhiteSpace();
+			return token;
+		}catch(LazyException e){
+			if(e!=SUSPEND){
+				throw e;
+			}
+			return null;
+		}
+	}
+
+	protected int getPosition(){
+		return n;
+	}
+
+	// Move the positions of a token, its siblings and everything below them
+	// by the given offset
+	private static void shift(LazyNode token,int offset){
+		while(token!=null){
+			token.startIndex+=offset;
+			if(token.endIndex!=-1){
+				token.endIndex+=offset;
+			}
+			shift(token.child,offset);
+			token=token.next;
+		}
+	}
+
+	// Consume leading whitespace and the start of the root object or array
+	private void consumeRoot() throws LazyException{
 		consumeWhiteSpace();
 		// We are going to manually push the first token onto the stack so
 		// future push operations can avoid doing an if empty check when
 		// setting the parent child relationship
-		char c=cbuf[n];
+		char c=charAt(n);
 		if(c=='{'){
-			stack[stackPointer++]=LazyNode.cObject(n);
+			stack[stackPointer]=openNode(LazyNode.OBJECT,n);
 		}else if(c=='['){
-			stack[stackPointer++]=LazyNode.cArray(n);
+			stack[stackPointer]=openNode(LazyNode.ARRAY,n);
 		}else{
-			throw new LazyException("Can not parse raw JSON value, must be either object or array",0);
+			throw new LazyException("Can not parse raw JSON value, must be either object or array",n);
 		}
+		stackPointer++;
 		root=stack[1];
 		stackTop=root;
+		if(projection!=null){
+			if(filters==null || filters.length<STACK_SIZE){
+				filters=new LazyProjection[STACK_SIZE];
+			}
+			filters[1]=projection;
+		}
 		n++;
-		boolean expectValue=false;
+		expectValue=false;
+	}
+
+	// Only whitespace is allowed after the root object or array
+	private void consumeTrailingWhiteSpace() throws LazyException{
+		for(;n<length;n++){
+			char c=charAt(n);
+			if(!(c==' '|| c=='\n' || c=='\t' || c=='\r')){
+				throw new LazyException("Unexpected data after end of JSON data",n);
+			}
+		}
+	}
+
+	// Consume tokens until either the root object or array has been closed
+	// or the end of the available data has been reached
+	private void consumeTokens() throws LazyException{
+		char c;
 		LazyNode token=null;
 		for(;n<length;n++){
-			c=cbuf[n];
+			c=charAt(n);
 			switch(c){
 				case '{':
-					push(LazyNode.cObject(n));
+					if(deferred){
+						deferContainer(LazyNode.OBJECT);
+						break;
+					}
+					push(openNode(LazyNode.OBJECT,n));
+					if(filters!=null){
+						// Objects in arrays and field values share their projection
+						filters[stackPointer-1]=filters[stackPointer-2];
+					}
 					expectValue=false;
 					break;
 				case '}':
@@ -204,7 +1431,7 @@ public final class LazyParser{
 					}else if(token.type!=LazyNode.OBJECT){
 						// TODO: Do we have any legal cases that should send us in here?
 						if(token.endIndex==-1){
-							token.endIndex=n;
+							close(token,n);
 						}
 						token=pop();
 						if(token==null){
@@ -220,7 +1447,7 @@ public final class LazyParser{
 							throw new LazyException("Unexpected end of object",n);
 						}
 					}
-					token.endIndex=n+1;
+					close(token,n+1);
 					// If this object was the value for a field, pop off that field too
 					if(stackTop!=null && stackTop.type==LazyNode.FIELD){
 						drop();
@@ -229,38 +1456,43 @@ public final class LazyParser{
 					if(expectValue){
 						throw new LazyException("Unexpected comma without another value",n-1);
 					}
+					// Was this the end of the root object?
+					if(stackTop==null){
+						n++;
+						return;
+					}
 					break;
 			case '"':
+				markToken();
 				expectValue=false;
-				if(stackTop.type==LazyNode.ARRAY){
-					token=LazyNode.cStringValue(n+1);
-					stackTop.addChild(token);
-					if(consumeString()){
-						token.type=LazyNode.VALUE_ESTRING;
-					}
-					token.endIndex=n;
-				}else if(stackTop.type==LazyNode.FIELD){
-					token=LazyNode.cStringValue(n+1);
-					stackTop.addChild(token);
-					if(consumeString()){
-						token.type=LazyNode.VALUE_ESTRING;
+				if(stackTop.type==LazyNode.OBJECT){
+					if(filters!=null && filters[stackPointer-1]!=null){
+						consumeProjectedField();
+						break;
 					}
-					token.endIndex=n;
-					drop();
-				}else if(stackTop.type==LazyNode.OBJECT){
-					push(LazyNode.cField(n+1));
-					if(consumeString()){
-						stackTop.type=LazyNode.VALUE_ESTRING;
+					push(openNode(LazyNode.FIELD,n+1));
+					if(filters!=null){
+						// Everything below an unfiltered object is selected
+						filters[stackPointer-1]=null;
 					}
-					stackTop.endIndex=n;
+					consumeString();
+					close(stackTop,n);
 					n++;
 					consumeWhiteSpace();
-					c=cbuf[n];
+					c=charAt(n);
 					if(c==':'){
 						tryToConsumeWhiteSpace();
 					}else{
 						throw new LazyException("Unexpected character! Was expecting field separator ':'",n);
 					}
+				}else{
+					int start=n+1;
+					int savings=consumeString();
+					addValue(savings>0?LazyNode.VALUE_ESTRING:LazyNode.VALUE_STRING,start,n,savings);
+					if(stackTop.type==LazyNode.FIELD){
+						// This was the end of the value for a field, pop that too
+						drop();
+					}
 				}
 				break;
 			case ',':
@@ -271,7 +1503,14 @@ public final class LazyParser{
 				if(stackTop.type==LazyNode.OBJECT){
 					throw new LazyException("Missing field name for array",n);
 				}
-				push(LazyNode.cArray(n));
+				if(deferred){
+					deferContainer(LazyNode.ARRAY);
+					break;
+				}
+				push(openNode(LazyNode.ARRAY,n));
+				if(filters!=null){
+					filters[stackPointer-1]=filters[stackPointer-2];
+				}
 				expectValue=false;
 				break;
 			case ']':
@@ -280,14 +1519,14 @@ public final class LazyParser{
 						throw new LazyException("Unexpected end of array character",n);
 				}else if(token.type!=LazyNode.ARRAY){
 					if(token.endIndex==-1){
-						token.endIndex=n;
+						close(token,n);
 					}
 					token=pop();
 					if(token==null || token.type!=LazyNode.ARRAY){
 						throw new LazyException("Unexpected end of array",n);
 					}
 				}
-				token.endIndex=n+1;
+				close(token,n+1);
 				// If this array was the value for a field, pop off that field too
 				if(stackTop!=null && stackTop.type==LazyNode.FIELD){
 					drop();
@@ -296,6 +1535,11 @@ public final class LazyParser{
 				if(expectValue){
 					throw new LazyException("Unexpected comma without another value",n-1);
 				}
+				// Was this the end of the root array?
+				if(stackTop==null){
+					n++;
+					return;
+				}
 				break;
 			case ' ':
 			case '\t':
@@ -305,71 +1549,267 @@ public final class LazyParser{
 				break;
 			default:
 				// This must be a new value
+				markToken();
 				expectValue=false;
 				if(c=='n'){
 					// Must be null value
-					if(cbuf[++n]=='u' && cbuf[++n]=='l' && cbuf[++n]=='l'){
-						token=LazyNode.cValueNull(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
-						}
-					}else{
+					if(!consumeLiteral("null")){
 						throw new LazyException("Syntax error",n);
 					}
+					addValue(LazyNode.VALUE_NULL,n,n,0);
 				}else if(c=='t'){
 					// Must be true value
-					if(cbuf[++n]=='r' && cbuf[++n]=='u' && cbuf[++n]=='e'){
-						token=LazyNode.cValueTrue(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
-						}
-					}else{
+					if(!consumeLiteral("true")){
 						throw new LazyException("Syntax error",n);
 					}
+					addValue(LazyNode.VALUE_TRUE,n,n,0);
 				}else if(c=='f'){
 					// Must be false value
-					if(cbuf[++n]=='a' && cbuf[++n]=='l' && cbuf[++n]=='s' && cbuf[++n]=='e'){
-						token=LazyNode.cValueFalse(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
-						}
-					}else{
+					if(!consumeLiteral("false")){
 						throw new LazyException("Syntax error",n);
 					}
+					addValue(LazyNode.VALUE_FALSE,n,n,0);
 				}else if(c=='-' || !(c<'0' || c>'9')){
 					// Must be a number
-					token=LazyNode.cNumberValue(n);
-					stackTop.addChild(token);
+					int start=n;
 					if(consumeNumber(c)){
-						token.type=LazyNode.VALUE_FLOAT;
+						addValue(LazyNode.VALUE_FLOAT,start,n,0);
+					}else{
+						addValue(LazyNode.VALUE_INTEGER,start,n,number);
 					}
-					token.endIndex=n;
 					n--;
-					if(stackTop.type==LazyNode.FIELD){
-						// This was the end of the value for a field, pop that too
-						drop();
-					}
 				}else{
 					throw new LazyException("Syntax error",n);
-				}				
-			
+				}
+				if(stackTop.type==LazyNode.FIELD){
+					// This was the end of the value for a field, pop that too
+					drop();
+				}
 				break;
 			}
 		}
-		if(size()!=0){
-			throw new LazyException("Unexpected end of JSON data");
+	}
+
+	// Return the token for an object, array or field about to be pushed onto
+	// the stack. When nothing is built, the token left in the stack slot by
+	// an earlier token at the same depth is reused instead.
+	private LazyNode openNode(byte type,int index){
+		if(output==OUTPUT_NODES){
+			return createNode(type,index);
 		}
-		if(expectValue){
-			throw new LazyException("Unexpected trailing comma");
+		LazyNode token=stack[stackPointer];
+		if(token==null){
+			token=new LazyNode(type,index);
+		}else{
+			token.type=type;
+			token.endIndex=-1;
+		}
+		if(output==OUTPUT_TAPE){
+			token.number=addTape(type,index);
+		}
+		return token;
+	}
+
+	// Set the end index of an object, array or field token
+	private void close(LazyNode token,int end){
+		token.endIndex=end;
+		if(output==OUTPUT_TAPE){
+			tape[(int)token.number+LazySource.TAPE_END]=end;
+		}
+	}
+
+	// A token is popped off the stack once everything nested inside it has
+	// been added to the tape, which is when the offset of the entry after it
+	// is known
+	private void closeTape(LazyNode token){
+		tape[(int)token.number+LazySource.TAPE_AFTER]=tapeSize;
+	}
+
+	// Add a string, number or literal token to the top of the stack. The
+	// value is the value of an integer, or how many characters shorter a
+	// string with escapes gets when unescaped.
+	private void addValue(byte type,int start,int end,long value){
+		if(output==OUTPUT_NONE){
+			return;
+		}
+		if(output==OUTPUT_TAPE){
+			// Values have nothing nested inside them, so the entry after
+			// them is the next one unless the entry is for an escaped string
+			int entry=addTape(type,start);
+			tape[entry+LazySource.TAPE_END]=end;
+			if(type==LazyNode.VALUE_ESTRING){
+				tape[entry+LazySource.TAPE_AFTER]=(int)value;
+			}
+			return;
+		}
+		LazyNode token=createNode(type,start);
+		token.endIndex=end;
+		if(type==LazyNode.VALUE_INTEGER){
+			token.numberClass=numberClass;
+		}
+		token.number=value;
+		stackTop.addChild(token);
+	}
+
+	// Add a node for a nested object or array and skip to its end, leaving
+	// the content to be tokenized when the node is expanded
+	private void deferContainer(byte type) throws LazyException{
+		LazyNode token=createNode(type,n);
+		stackTop.addChild(token);
+		skipContainer();
+		token.endIndex=n+1;
+		token.pending=LazyNode.DEFERRED;
+		// If this was the value for a field, pop off that field too
+		if(stackTop.type==LazyNode.FIELD){
+			drop();
+		}
+		expectValue=false;
+	}
+
+	// Move n from the opening bracket of an object or array to its closing
+	// bracket. Strings are stepped over since they may contain brackets,
+	// everything else is left for the tokenizer to validate.
+	private void skipContainer() throws LazyException{
+		int depth=1;
+		while(depth>0){
+			n++;
+			char c=charAt(n);
+			if(c=='"'){
+				consumeString();
+			}else if(c=='{' || c=='['){
+				depth++;
+			}else if(c=='}' || c==']'){
+				depth--;
+			}
+		}
+	}
+
+	// Consume a field name inside an object filtered by a projection. A
+	// field that no path reaches is skipped along with its value, otherwise
+	// it is pushed along with the projection for its value.
+	private void consumeProjectedField() throws LazyException{
+		int start=n+1;
+		consumeString();
+		int end=n;
+		n++;
+		consumeWhiteSpace();
+		if(charAt(n)!=':'){
+			throw new LazyException("Unexpected character! Was expecting field separator ':'",n);
+		}
+		LazyProjection selected=filters[stackPointer-1].select(source,start,end);
+		if(selected==LazyProjection.SKIP){
+			n++;
+			consumeWhiteSpace();
+			skipValue();
+			return;
+		}
+		LazyNode field=createNode(LazyNode.FIELD,start);
+		push(field);
+		field.endIndex=end;
+		filters[stackPointer-1]=selected;
+		tryToConsumeWhiteSpace();
+	}
+
+	// Move n over a value without tokenizing it, leaving it at the last
+	// character of the value
+	private void skipValue() throws LazyException{
+		char c=charAt(n);
+		if(c=='{' || c=='['){
+			skipContainer();
+		}else if(c=='"'){
+			consumeString();
+		}else if(c=='n'){
+			if(!consumeLiteral("null")){
+				throw new LazyException("Syntax error",n);
+			}
+		}else if(c=='t'){
+			if(!consumeLiteral("true")){
+				throw new LazyException("Syntax error",n);
+			}
+		}else if(c=='f'){
+			if(!consumeLiteral("false")){
+				throw new LazyException("Syntax error",n);
+			}
+		}else if(c=='-' || !(c<'0' || c>'9')){
+			consumeNumber(c);
+			n--;
+		}else{
+			throw new LazyException("Syntax error",n);
+		}
+	}
+
+	/**
+	 * Check that a string holds a well formed JSON object or array without
+	 * building any tokens. The same checks are made as when parsing, and
+	 * the same exception is thrown for malformed data.
+	 *
+	 * @param str the source json data
+	 * @throws LazyException if the string could not be parsed
+	 */
+	public static void validate(String str) throws LazyException{
+		// Read the characters of the string in place rather than copying them
+		new LazyParser((CharSequence)str).validate();
+	}
+
+	/**
+	 * Check that a section of UTF-8 encoded data holds a well formed JSON
+	 * object or array without building any tokens. The same checks are made
+	 * as when parsing, and the same exception is thrown for malformed data.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to check
+	 * @param length the number of bytes to check
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static void validate(byte[] raw,int offset,int length) throws LazyException{
+		new LazyParser(raw,offset,length).validate();
+	}
+
+	/**
+	 * Check that the UTF-8 encoded data between the position and limit of a
+	 * buffer holds a well formed JSON object or array without building any
+	 * tokens. The same checks are made as when parsing, and the same
+	 * exception is thrown for malformed data.
+	 *
+	 * @param raw the source json data
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static void validate(ByteBuffer raw) throws LazyException{
+		new LazyParser(raw).validate();
+	}
+
+	// Tokenize without building any tokens, so the same rules are followed
+	// and the same errors are reported as when parsing
+	private void validate() throws LazyException{
+		output=OUTPUT_NONE;
+		tokenize();
+	}
+
+	// Tokenize the source into a tape instead of a tree of nodes. This makes
+	// a single allocation for a typical document rather than one for every
+	// token. The root node is built from the tape, and the nodes below it
+	// are only built as the document is visited.
+	protected void tokenizeTape() throws LazyException{
+		output=OUTPUT_TAPE;
+		// Guess at one entry for every eight characters of source
+		tape=new int[Math.max(64,(length-n)>>1)];
+		tapeSize=0;
+		tokenize();
+		source.tape=tape;
+		root=LazyNode.fromTape(tape,0);
+	}
+
+	// Append an entry to the tape and return its offset
+	private int addTape(byte type,int start){
+		if(tapeSize+LazySource.TAPE_ENTRY>tape.length){
+			tape=Arrays.copyOf(tape,tape.length<<1);
 		}
+		int entry=tapeSize;
+		tape[entry+LazySource.TAPE_TYPE]=type;
+		tape[entry+LazySource.TAPE_START]=start;
+		tape[entry+LazySource.TAPE_END]=-1;
+		tapeSize+=LazySource.TAPE_ENTRY;
+		tape[entry+LazySource.TAPE_AFTER]=tapeSize;
+		return entry;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package me.doubledutch.lazyjson;
+
+import java.util.Arrays;
+
+/**
+ * A compiled set of field paths used to limit which parts of a document are
+ * parsed. Paths are given as field names separated by dots, such as
+ * "user.id" or "ts". Fields that no path can reach are skipped while parsing
+ * without creating any tokens for them or their values. A field at the end
+ * of a path is parsed in full.
+ * <p>
+ * Arrays do not take up a part of a path. The path "items.id" selects the
+ * id field of every object in the items array, just as it would select the
+ * id field of an items object.
+ */
+public final class LazyProjection{
+	// Returned for fields that are not selected
+	protected static final LazyProjection SKIP=new LazyProjection();
+
+	private String[] names=new String[0];
+	private LazyProjection[] children=new LazyProjection[0];
+	// True if a path ends here, selecting everything below
+	private boolean leaf=false;
+
+	private LazyProjection(){
+
+	}
+
+	/**
+	 * Compile a set of dot separated field paths.
+	 *
+	 * @param paths the paths to compile
+	 * @return a projection selecting the given paths
+	 * @throws IllegalArgumentException if a path is empty or has an empty field name
+	 */
+	public static LazyProjection compile(String... paths){
+		LazyProjection projection=new LazyProjection();
+		for(String path:paths){
+			LazyProjection node=projection;
+			int start=0;
+			while(true){
+				int end=path.indexOf('.',start);
+				if(end==-1){
+					end=path.length();
+				}
+				if(end==start){
+					throw new IllegalArgumentException("Empty field name in path '"+path+"'");
+				}
+				node=node.add(path.substring(start,end));
+				if(end==path.length()){
+					break;
+				}
+				start=end+1;
+			}
+			node.leaf=true;
+		}
+		return projection;
+	}
+
+	private LazyProjection add(String name){
+		for(int i=0;i<names.length;i++){
+			if(names[i].equals(name)){
+				return children[i];
+			}
+		}
+		names=Arrays.copyOf(names,names.length+1);
+		children=Arrays.copyOf(children,children.length+1);
+		names[names.length-1]=name;
+		children[children.length-1]=new LazyProjection();
+		return children[children.length-1];
+	}
+
+	/**
+	 * Find the projection for the value of a field given by its raw name in
+	 * the source.
+	 *
+	 * @param source the source data for the field
+	 * @param startIndex the first index of the field name
+	 * @param endIndex the index after the last index of the field name
+	 * @return the projection for the value, null to select all of it, or
+	 *         SKIP if the field is not selected at all
+	 */
+	protected LazyProjection select(LazySource source,int startIndex,int endIndex){
+		for(int i=0;i<names.length;i++){
+			if(source.matches(names[i],startIndex,endIndex)){
+				LazyProjection child=children[i];
+				return child.leaf?null:child;
+			}
+		}
+		return SKIP;
+	}
+}
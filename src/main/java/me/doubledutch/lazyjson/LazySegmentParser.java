@@ -0,0 +1,211 @@
+package me.doubledutch.lazyjson;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+
+/**
+ * Parses a file that is too large to be mapped into memory in one piece.
+ * A single mapping is addressed by int positions, so the file is mapped in
+ * segments of at most 2 GB instead. Every value that fits in a segment is
+ * tokenized by an ordinary parser over the segment it starts in, a new
+ * segment being mapped from the start of a value that runs past the end of
+ * the current one. Objects and arrays that do not fit in a segment of
+ * their own are walked here with file positions, and the segment each of
+ * their fields and values was tokenized in is recorded in the map shared
+ * by the sources of all segments.
+ */
+final class LazySegmentParser{
+	private final FileChannel channel;
+	private final long size;
+	private final int segmentSize;
+	private final IdentityHashMap<LazyNode,LazySource> segments=new IdentityHashMap<LazyNode,LazySource>();
+
+	// The segment mapped last, along with the file positions of its first
+	// byte and of the byte after its last, and the parser for its values
+	private LazySource segment;
+	private long base;
+	private long limit;
+	private LazyParser parser;
+
+	// The file position after the last field or value tokenized
+	private long end;
+
+	// The segment the root object or array starts in
+	private LazySource rootSource;
+
+	protected LazySegmentParser(FileChannel channel,int segmentSize) throws IOException{
+		this.channel=channel;
+		this.size=channel.size();
+		this.segmentSize=segmentSize;
+	}
+
+	/**
+	 * Parse the whole file.
+	 *
+	 * @return the token for the root object or array
+	 * @throws IOException if a segment could not be mapped
+	 * @throws LazyException if the data could not be parsed
+	 */
+	protected LazyNode parse() throws IOException,LazyException{
+		long position=skipWhiteSpace(0);
+		char c=charAt(position);
+		if(c!='{' && c!='['){
+			throw error("Can not parse raw JSON value, must be either object or array",position);
+		}
+		LazyNode root=tokenizeValue(position);
+		// Whether the root fits or not, the segment it starts in is the
+		// current one at this point
+		rootSource=segment;
+		if(root==null){
+			root=tokenizeContainer(position);
+		}
+		for(position=end;position<size;position++){
+			if(!isWhiteSpace(charAt(position))){
+				throw error("Unexpected data after end of JSON data",position);
+			}
+		}
+		return root;
+	}
+
+	// Walk an object or array too large for a segment of its own. The
+	// current segment starts with the opening bracket.
+	private LazyNode tokenizeContainer(long position) throws IOException,LazyException{
+		byte type=charAt(position)=='{'?LazyNode.OBJECT:LazyNode.ARRAY;
+		char close=type==LazyNode.OBJECT?'}':']';
+		LazyNode token=new LazyNode(type,(int)(position-base));
+		position=skipWhiteSpace(position+1);
+		if(charAt(position)==close){
+			end=position+1;
+			return token;
+		}
+		for(;;){
+			LazyNode field=null;
+			if(type==LazyNode.OBJECT){
+				if(charAt(position)!='"'){
+					throw error("Syntax error",position);
+				}
+				field=tokenizeField(position);
+				if(field==null){
+					throw error("Field name does not fit in a segment",position);
+				}
+				position=end;
+			}
+			LazyNode value=tokenizeValue(position);
+			if(value==null){
+				char c=charAt(position);
+				if(c!='{' && c!='['){
+					throw error("Value does not fit in a segment",position);
+				}
+				value=tokenizeContainer(position);
+			}
+			if(field!=null){
+				field.addChild(value);
+				token.addChild(field);
+			}else{
+				token.addChild(value);
+			}
+			position=skipWhiteSpace(end);
+			char c=charAt(position);
+			if(c==close){
+				end=position+1;
+				return token;
+			}
+			if(c!=','){
+				throw error("Syntax error",position);
+			}
+			position=skipWhiteSpace(position+1);
+		}
+	}
+
+	// Tokenize the value at the given position, mapping a new segment from
+	// the start of the value if it runs past the end of the current one.
+	// Returns null if it does not fit in a segment of its own either.
+	private LazyNode tokenizeValue(long position) throws IOException,LazyException{
+		LazyNode token=tokenize(position,false);
+		if(token==null && base!=position){
+			map(position);
+			token=tokenize(position,false);
+		}
+		return token;
+	}
+
+	// Tokenize the name of a field and the separator after it in the same
+	// way as a value
+	private LazyNode tokenizeField(long position) throws IOException,LazyException{
+		LazyNode token=tokenize(position,true);
+		if(token==null && base!=position){
+			map(position);
+			token=tokenize(position,true);
+		}
+		return token;
+	}
+
+	private LazyNode tokenize(long position,boolean field) throws IOException,LazyException{
+		if(position<base || position>=limit){
+			map(position);
+		}
+		int start=(int)(position-base);
+		boolean more=limit<size;
+		LazyNode token;
+		try{
+			token=field?parser.tokenizeField(start,more):parser.tokenizeValue(start,more);
+		}catch(LazyException e){
+			int at=e.getPosition()<0?start:e.getPosition();
+			throw error(e.getMessage(),base+at);
+		}
+		if(token==null){
+			// The value is cut short, so the next attempt has to start over
+			// with a new segment and parser
+			return null;
+		}
+		end=base+parser.getPosition();
+		segments.put(token,segment);
+		return token;
+	}
+
+	// Map the next segment starting at the given position
+	private void map(long position) throws IOException{
+		long length=Math.min(segmentSize,size-position);
+		segment=new LazySource(channel.map(FileChannel.MapMode.READ_ONLY,position,length));
+		segment.segments=segments;
+		parser=new LazyParser(segment,0,(int)length);
+		base=position;
+		limit=position+length;
+	}
+
+	/**
+	 * Returns the source of the segment the root object or array starts in.
+	 *
+	 * @return the source data for the root token
+	 */
+	protected LazySource getRootSource(){
+		return rootSource;
+	}
+
+	private char charAt(long position) throws IOException,LazyException{
+		if(position>=size){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+		if(position<base || position>=limit){
+			map(position);
+		}
+		return (char)(segment.bbuf.get((int)(position-base))&0xFF);
+	}
+
+	private long skipWhiteSpace(long position) throws IOException,LazyException{
+		while(isWhiteSpace(charAt(position))){
+			position++;
+		}
+		return position;
+	}
+
+	private static boolean isWhiteSpace(char c){
+		return c==' ' || c=='\n' || c=='\t' || c=='\r';
+	}
+
+	// Positions in the file do not fit in the position of an exception
+	private static LazyException error(String message,long position){
+		return new LazyException(message+" at position "+position);
+	}
+}
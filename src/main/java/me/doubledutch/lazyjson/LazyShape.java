@@ -0,0 +1,125 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * The field names of an object in order, shared by all objects that have
+ * exactly the same field names in the same order. A shape maps a field
+ * name to its position in the object, so once an object has been matched
+ * to a shape its fields are found without looking at the source again.
+ * <p>
+ * Shapes are kept in a global cache with a fixed number of slots. A slot
+ * is only taken over by a new shape once that shape has been seen twice in
+ * a row, so objects with names that keep changing, such as maps keyed by
+ * ids, do not push out the shapes of stable schemas. Shapes are immutable
+ * and the cache is shared by all threads without locking.
+ */
+final class LazyShape{
+	private static final int CACHE_SIZE=1024;
+	private static final LazyShape[] CACHE=new LazyShape[CACHE_SIZE];
+	// The fingerprint of the last shape that missed in each slot
+	private static final int[] MISSES=new int[CACHE_SIZE];
+
+	private final int fingerprint;
+	protected final String[] names;
+	// Open addressing table of positions plus one, indexed by the hash of
+	// the name at that position
+	private final int[] table;
+
+	private LazyShape(int fingerprint,LazySource source,LazyNode[] fields){
+		this.fingerprint=fingerprint;
+		names=new String[fields.length];
+		table=new int[Integer.highestOneBit(fields.length)<<2];
+		int mask=table.length-1;
+		for(int i=0;i<fields.length;i++){
+			names[i]=source.of(fields[i]).getString(fields[i].startIndex,fields[i].endIndex);
+			// Names are added in order, so the first of several fields with
+			// the same name is the one found first when probing
+			int slot=spread(names[i].hashCode())&mask;
+			while(table[slot]!=0){
+				slot=(slot+1)&mask;
+			}
+			table[slot]=i+1;
+		}
+	}
+
+	/**
+	 * Find the shape for the given field tokens of an object, creating it if
+	 * it should take over its slot in the cache.
+	 *
+	 * @param source the source data for the fields
+	 * @param fields the field tokens of an object in order
+	 * @return the shape of the fields, or null if the object has no cached shape
+	 */
+	protected static LazyShape find(LazySource source,LazyNode[] fields){
+		// The number and length of the names along with the first and last
+		// name tell most shapes apart, the names are compared in full below
+		int fingerprint=fields.length;
+		for(LazyNode field:fields){
+			fingerprint=31*fingerprint+field.endIndex-field.startIndex;
+		}
+		LazyNode last=fields[fields.length-1];
+		fingerprint=31*fingerprint+source.of(fields[0]).hash(fields[0].startIndex,fields[0].endIndex);
+		fingerprint=31*fingerprint+source.of(last).hash(last.startIndex,last.endIndex);
+		int slot=spread(fingerprint)&(CACHE_SIZE-1);
+		LazyShape shape=CACHE[slot];
+		if(shape!=null && shape.fingerprint==fingerprint && shape.matches(source,fields)){
+			return shape;
+		}
+		if(shape==null || MISSES[slot]==fingerprint){
+			shape=new LazyShape(fingerprint,source,fields);
+			CACHE[slot]=shape;
+			return shape;
+		}
+		MISSES[slot]=fingerprint;
+		return null;
+	}
+
+	private boolean matches(LazySource source,LazyNode[] fields){
+		if(names.length!=fields.length){
+			return false;
+		}
+		for(int i=0;i<names.length;i++){
+			if(!source.of(fields[i]).matches(names[i],fields[i].startIndex,fields[i].endIndex)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the position of the first field with the given name.
+	 *
+	 * @param key the name of the field
+	 * @return the position of the field, or -1 if there is no such field
+	 */
+	protected int indexOf(String key){
+		int mask=table.length-1;
+		for(int slot=spread(key.hashCode())&mask;table[slot]!=0;slot=(slot+1)&mask){
+			if(names[table[slot]-1].equals(key)){
+				return table[slot]-1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the first field with the given precompiled
+	 * name.
+	 *
+	 * @param key the precompiled name of the field
+	 * @return the position of the field, or -1 if there is no such field
+	 */
+	protected int indexOf(LazyKey key){
+		int mask=table.length-1;
+		for(int slot=spread(key.charHash)&mask;table[slot]!=0;slot=(slot+1)&mask){
+			if(names[table[slot]-1].equals(key.name)){
+				return table[slot]-1;
+			}
+		}
+		return -1;
+	}
+
+	private static int spread(int h){
+		h*=0x9E3779B9;
+		return h^(h>>>16);
+	}
+}
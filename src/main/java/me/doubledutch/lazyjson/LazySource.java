@@ -0,0 +1,346 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+
+/**
+ * The LazySource holds the raw JSON data that the start and end index of
+ * every LazyNode point into. The data is either held as a char array, as
+ * UTF-8 encoded bytes in a ByteBuffer or as any other character sequence.
+ * For byte sources all indexes are byte offsets and string values are only
+ * decoded when they are requested.
+ */
+final class LazySource{
+	protected final char[] cbuf;
+	protected final ByteBuffer bbuf;
+	protected final CharSequence seq;
+
+	// The tokens of a document parsed into a tape. Each entry holds four
+	// ints: the token type, the start and end index into the source and the
+	// offset of the entry following the token and everything nested inside
+	// it. The entries for the children of a container directly follow the
+	// entry of the container itself, and the value of a field directly
+	// follows the field. Strings with escaped characters are always followed
+	// directly by the next entry, so they keep how many characters shorter
+	// the string gets when unescaped in place of that offset.
+	protected int[] tape;
+	protected static final int TAPE_TYPE=0;
+	protected static final int TAPE_START=1;
+	protected static final int TAPE_END=2;
+	protected static final int TAPE_AFTER=3;
+	protected static final int TAPE_ENTRY=4;
+
+	// For a file too large to be mapped in one piece, the segment each token
+	// tokenized on its own was found in. Those are the fields and values of
+	// objects and arrays spanning several segments, and everything nested
+	// inside them points into the same segment. The map is shared by all
+	// segments of the file, and null for every other source.
+	protected IdentityHashMap<LazyNode,LazySource> segments;
+
+	// The pool field names are taken from, or null to create new strings
+	protected LazyKeyPool keyPool;
+
+	// Decoded string values kept for reuse, indexed by a hash of the start
+	// index of their token. Each slot holds at most one value, so the cache
+	// never grows beyond its initial size. Null unless enabled.
+	protected DecodedString[] decoded;
+
+	// Immutable, so a slot can be read and replaced by different threads
+	// without ever pairing a value with the wrong token
+	protected static final class DecodedString{
+		protected final int startIndex;
+		protected final String value;
+
+		protected DecodedString(int startIndex,String value){
+			this.startIndex=startIndex;
+			this.value=value;
+		}
+	}
+
+	protected LazySource(char[] cbuf){
+		this.cbuf=cbuf;
+		this.bbuf=null;
+		this.seq=null;
+	}
+
+	protected LazySource(ByteBuffer bbuf){
+		this.cbuf=null;
+		this.bbuf=bbuf;
+		this.seq=null;
+	}
+
+	protected LazySource(CharSequence seq){
+		this.cbuf=null;
+		this.bbuf=null;
+		this.seq=seq;
+	}
+
+	/**
+	 * Returns the source the start and end index of the given token point
+	 * into, which is this source unless the token was tokenized in a segment
+	 * of a large file of its own. Tokens look up their source with this
+	 * before reading from it, so the tokens of such a file need nothing
+	 * beyond what every other token has.
+	 *
+	 * @param token a token read through this source
+	 * @return the source data for the token
+	 */
+	protected LazySource of(LazyNode token){
+		if(segments==null){
+			return this;
+		}
+		LazySource segment=segments.get(token);
+		return segment==null?this:segment;
+	}
+
+	/**
+	 * Returns the character at the given index. For byte sources this is the
+	 * raw byte value, which is only meaningful for the ascii characters used
+	 * for the structure, numbers and literals of a JSON document.
+	 *
+	 * @param index the index into the source
+	 * @return the character found at the given index
+	 */
+	protected char charAt(int index){
+		if(cbuf!=null){
+			return cbuf[index];
+		}
+		if(bbuf!=null){
+			return (char)(bbuf.get(index)&0xFF);
+		}
+		return seq.charAt(index);
+	}
+
+	/**
+	 * Extracts the raw characters between the two indexes as a string. Byte
+	 * sources are decoded as UTF-8.
+	 *
+	 * @param startIndex the first index to include
+	 * @param endIndex the index after the last index to include
+	 * @return the raw string value
+	 */
+	protected String getString(int startIndex,int endIndex){
+		if(cbuf!=null){
+			return new String(cbuf,startIndex,endIndex-startIndex);
+		}
+		if(seq!=null){
+			return seq.subSequence(startIndex,endIndex).toString();
+		}
+		if(bbuf.hasArray()){
+			return new String(bbuf.array(),bbuf.arrayOffset()+startIndex,endIndex-startIndex,StandardCharsets.UTF_8);
+		}
+		// Direct and mapped buffers have to be copied out before decoding
+		byte[] data=new byte[endIndex-startIndex];
+		for(int i=0;i<data.length;i++){
+			data[i]=bbuf.get(startIndex+i);
+		}
+		return new String(data,StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Start keeping decoded string values. The number of values kept is the
+	 * largest power of two not exceeding the given size.
+	 *
+	 * @param size the maximum number of values to keep
+	 */
+	protected void enableDecodeCache(int size){
+		if(size<1){
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		int slots=Integer.highestOneBit(size);
+		if(decoded==null || decoded.length!=slots){
+			decoded=new DecodedString[slots];
+		}
+	}
+
+	/**
+	 * Returns the decoded value kept for the token starting at the given
+	 * index.
+	 *
+	 * @param startIndex the start index of the token
+	 * @return the decoded value or null if it is not kept
+	 */
+	protected String getDecoded(int startIndex){
+		DecodedString[] slots=decoded;
+		if(slots==null){
+			return null;
+		}
+		DecodedString entry=slots[slot(startIndex,slots.length)];
+		if(entry!=null && entry.startIndex==startIndex){
+			return entry.value;
+		}
+		return null;
+	}
+
+	/**
+	 * Keep the decoded value for the token starting at the given index,
+	 * replacing any value held in the same slot.
+	 *
+	 * @param startIndex the start index of the token
+	 * @param value the decoded value
+	 */
+	protected void putDecoded(int startIndex,String value){
+		DecodedString[] slots=decoded;
+		if(slots!=null){
+			slots[slot(startIndex,slots.length)]=new DecodedString(startIndex,value);
+		}
+	}
+
+	// Tokens are close together in the source, spread them over the slots
+	private static int slot(int startIndex,int length){
+		return (startIndex*0x9E3779B9)>>>(32-Integer.numberOfTrailingZeros(length))&(length-1);
+	}
+
+	/**
+	 * Computes a hash of the raw data between the two indexes without
+	 * creating a string. For ascii data the hash is the same for all kinds
+	 * of sources.
+	 *
+	 * @param startIndex the first index to include
+	 * @param endIndex the index after the last index to include
+	 * @return the hash of the data
+	 */
+	protected int hash(int startIndex,int endIndex){
+		int h=0;
+		if(cbuf!=null){
+			for(int i=startIndex;i<endIndex;i++){
+				h=31*h+cbuf[i];
+			}
+		}else if(bbuf!=null){
+			for(int i=startIndex;i<endIndex;i++){
+				h=31*h+(bbuf.get(i)&0xFF);
+			}
+		}else{
+			for(int i=startIndex;i<endIndex;i++){
+				h=31*h+seq.charAt(i);
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Computes the hash a key has when it is found in this source, the same
+	 * hash that hash returns for the raw data of the key. For byte sources
+	 * that is the hash of the UTF-8 encoded key.
+	 *
+	 * @param key the key to compute the hash for
+	 * @return the hash of the key
+	 */
+	protected int hash(String key){
+		if(bbuf==null){
+			return key.hashCode();
+		}
+		int h=0;
+		for(int i=0;i<key.length();i++){
+			char c=key.charAt(i);
+			if(c>0x7F){
+				// Multi byte characters are rare in keys, simply encode them
+				h=0;
+				for(byte b:key.getBytes(StandardCharsets.UTF_8)){
+					h=31*h+(b&0xFF);
+				}
+				return h;
+			}
+			h=31*h+c;
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the hash a precompiled key has when it is found in this source.
+	 *
+	 * @param key the key to get the hash for
+	 * @return the hash of the key
+	 */
+	protected int hash(LazyKey key){
+		return bbuf==null?key.charHash:key.byteHash;
+	}
+
+	/**
+	 * Compares a precompiled key to the raw data between the two indexes.
+	 *
+	 * @param key the key to compare to
+	 * @param startIndex the first index to compare
+	 * @param endIndex the index after the last index to compare
+	 * @return true if the key matches, false otherwise
+	 */
+	protected boolean matches(LazyKey key,int startIndex,int endIndex){
+		if(cbuf!=null){
+			char[] chars=key.chars;
+			if(endIndex-startIndex!=chars.length){
+				return false;
+			}
+			for(int i=0;i<chars.length;i++){
+				if(chars[i]!=cbuf[startIndex+i]){
+					return false;
+				}
+			}
+			return true;
+		}
+		if(bbuf!=null){
+			byte[] bytes=key.bytes;
+			if(endIndex-startIndex!=bytes.length){
+				return false;
+			}
+			for(int i=0;i<bytes.length;i++){
+				if(bytes[i]!=bbuf.get(startIndex+i)){
+					return false;
+				}
+			}
+			return true;
+		}
+		return matches(key.name,startIndex,endIndex);
+	}
+
+	/**
+	 * Compares a string to the raw characters between the two indexes.
+	 *
+	 * @param key the string to compare to
+	 * @param startIndex the first index to compare
+	 * @param endIndex the index after the last index to compare
+	 * @return true if the key matches, false otherwise
+	 */
+	protected boolean matches(String key,int startIndex,int endIndex){
+		int length=key.length();
+		if(cbuf!=null){
+			// Quickly check the length first
+			if(endIndex-startIndex!=length){
+				return false;
+			}
+			// Now go through the field character for character to compare
+			for(int i=0;i<length;i++){
+				if(key.charAt(i)!=cbuf[startIndex+i]){
+					return false;
+				}
+			}
+			return true;
+		}
+		if(seq!=null){
+			if(endIndex-startIndex!=length){
+				return false;
+			}
+			for(int i=0;i<length;i++){
+				if(key.charAt(i)!=seq.charAt(startIndex+i)){
+					return false;
+				}
+			}
+			return true;
+		}
+		// A string never encodes to fewer UTF-8 bytes than it has characters
+		if(endIndex-startIndex<length){
+			return false;
+		}
+		for(int i=0;i<length;i++){
+			char c=key.charAt(i);
+			if(c>0x7F){
+				// Multi byte characters are rare in keys, simply decode and compare
+				return key.equals(getString(startIndex,endIndex));
+			}
+			if(c!=(bbuf.get(startIndex+i)&0xFF)){
+				return false;
+			}
+		}
+		return endIndex-startIndex==length;
+	}
+}
@@ -0,0 +1,96 @@
+package me.doubledutch.lazyjson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses a sequence of concatenated JSON documents, such as the output of
+ * systems writing one object after another without any separator. The
+ * documents may also be separated by whitespace. Each call to next parses
+ * the following document, starting where the previous one ended, and
+ * returns it as a view on the shared input.
+ * <p>
+ * Data from a reader is read in chunks as it is needed. All other sources
+ * are parsed in place. Once a malformed document has been found, the
+ * stream can not be used any further.
+ */
+public final class LazyStream{
+	private static final int BUFFER_SIZE=8192;
+
+	private final LazyParser parser;
+	private final Reader reader;
+
+	/**
+	 * Create a stream of the documents in a string.
+	 *
+	 * @param str the source json data
+	 */
+	public LazyStream(String str){
+		parser=new LazyParser(str);
+		reader=null;
+	}
+
+	/**
+	 * Create a stream of the documents in a section of a character array.
+	 * The characters must not be modified while the stream or any element
+	 * returned by it is in use.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first character to parse
+	 * @param length the number of characters to parse
+	 * @throws LazyException if the offset or length is out of bounds
+	 */
+	public LazyStream(char[] raw,int offset,int length) throws LazyException{
+		parser=new LazyParser(raw,offset,length);
+		reader=null;
+	}
+
+	/**
+	 * Create a stream of the documents in a section of UTF-8 encoded data.
+	 * The data must not be modified while the stream or any element returned
+	 * by it is in use.
+	 *
+	 * @param raw the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param length the number of bytes to parse
+	 * @throws LazyException if the offset or length is out of bounds
+	 */
+	public LazyStream(byte[] raw,int offset,int length) throws LazyException{
+		parser=new LazyParser(raw,offset,length);
+		reader=null;
+	}
+
+	/**
+	 * Create a stream of the documents in the UTF-8 encoded data between the
+	 * position and limit of a buffer.
+	 *
+	 * @param raw the source json data
+	 */
+	public LazyStream(ByteBuffer raw){
+		parser=new LazyParser(raw);
+		reader=null;
+	}
+
+	/**
+	 * Create a stream of the documents read from a reader. The reader is not
+	 * closed by the stream.
+	 *
+	 * @param reader the reader to read json data from
+	 */
+	public LazyStream(Reader reader){
+		parser=new LazyParser(BUFFER_SIZE);
+		this.reader=reader;
+	}
+
+	/**
+	 * Parse the next document of the stream.
+	 *
+	 * @return either a LazyObject or LazyArray instance, or null if there are no more documents
+	 * @throws IOException if the data could not be read
+	 * @throws LazyException if the document could not be parsed
+	 */
+	public LazyElement next() throws IOException,LazyException{
+		return parser.nextElement(reader);
+	}
+}
@@ -0,0 +1,213 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ByteSourceTest{
+    private static byte[] utf8(String str){
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testByteObject() throws LazyException{
+        String str="{\"foo\":42,\"bar\":-3.5,\"baz\":\"Hello World!\",\"on\":true,\"off\":null}";
+        LazyObject obj=new LazyObject(utf8(str));
+        assertEquals(42,obj.getInt("foo"));
+        assertEquals(42l,obj.getLong("foo"));
+        assertEquals(-3.5,obj.getDouble("bar"),0);
+        assertEquals("Hello World!",obj.getString("baz"));
+        assertTrue(obj.getBoolean("on"));
+        assertTrue(obj.isNull("off"));
+        assertEquals(5,obj.length());
+        assertEquals(str,obj.toString());
+    }
+
+    @Test
+    public void testByteArray() throws LazyException{
+        String str="[1,\"two\",[3],{\"four\":4}]";
+        LazyArray array=new LazyArray(utf8(str));
+        assertEquals(4,array.length());
+        assertEquals(1,array.getInt(0));
+        assertEquals("two",array.getString(1));
+        assertEquals(3,array.getJSONArray(2).getInt(0));
+        assertEquals(4,array.getJSONObject(3).getInt("four"));
+        assertEquals("{\"four\":4}",array.getJSONObject(3).toString());
+    }
+
+    @Test
+    public void testMultiByteCharacters() throws LazyException{
+        String str="{\"n\u00e6vn\":\"bl\u00e5b\u00e6r \u20ac \ud83d\ude00\",\"next\":7}";
+        LazyObject obj=new LazyObject(utf8(str));
+        assertEquals("bl\u00e5b\u00e6r \u20ac \ud83d\ude00",obj.getString("n\u00e6vn"));
+        assertTrue(obj.has("n\u00e6vn"));
+        assertFalse(obj.has("naevn"));
+        assertEquals(7,obj.getInt("next"));
+        assertEquals("n\u00e6vn",obj.keys().next());
+    }
+
+    @Test
+    public void testEscapedString() throws LazyException{
+        String str="{\"foo\":\"\u00f8\\n\\\"\\u00e6\\\"\"}";
+        LazyObject obj=new LazyObject(utf8(str));
+        assertEquals("\u00f8\n\"\u00e6\"",obj.getString("foo"));
+    }
+
+    @Test
+    public void testOffsetAndLength() throws LazyException{
+        byte[] raw=utf8("xx{\"foo\":[1,2]}{\"bar\":1}");
+        LazyObject obj=new LazyObject(raw,2,13);
+        assertEquals(2,obj.getJSONArray("foo").getInt(1));
+        assertEquals("{\"foo\":[1,2]}",obj.toString());
+        assertFalse(obj.has("bar"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncatedRange() throws LazyException{
+        byte[] raw=utf8("{\"foo\":\"bar\"}");
+        new LazyObject(raw,0,8);
+    }
+
+    @Test
+    public void testDirectBuffer() throws LazyException{
+        byte[] raw=utf8("  [\"\u00e6\u00f8\u00e5\",12]");
+        ByteBuffer buf=ByteBuffer.allocateDirect(raw.length);
+        buf.put(raw);
+        buf.flip();
+        LazyArray array=new LazyArray(buf);
+        assertEquals("\u00e6\u00f8\u00e5",array.getString(0));
+        assertEquals(12,array.getInt(1));
+        assertEquals(0,buf.position());
+    }
+
+    @Test
+    public void testParseElement() throws LazyException{
+        assertTrue(LazyElement.parse(utf8(" [1]")) instanceof LazyArray);
+        assertTrue(LazyElement.parse(ByteBuffer.wrap(utf8("{}"))) instanceof LazyObject);
+    }
+
+    @Test
+    public void testMappedFile() throws IOException,LazyException{
+        Path file=Files.createTempFile("lazyjson",".json");
+        try{
+            Files.write(file,utf8("{\"foo\":[1,2,3],\"bar\":\"s\u00f8\"}"));
+            LazyObject obj=(LazyObject)LazyElement.parse(file);
+            assertEquals(3,obj.getJSONArray("foo").getInt(2));
+            assertEquals("s\u00f8",obj.getString("bar"));
+        }finally{
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMappedChannel() throws IOException,LazyException{
+        Path file=Files.createTempFile("lazyjson",".json");
+        try{
+            Files.write(file,utf8("[{\"foo\":42}]"));
+            FileChannel channel=FileChannel.open(file,StandardOpenOption.READ);
+            LazyArray array=(LazyArray)LazyElement.parse(channel);
+            channel.close();
+            assertEquals(42,array.getJSONObject(0).getInt("foo"));
+        }finally{
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLongStrings() throws LazyException{
+        // Put the quotes and escapes at every offset within a word
+        for(int i=0;i<20;i++){
+            StringBuilder buf=new StringBuilder();
+            for(int j=0;j<i;j++){
+                buf.append((char)('a'+j));
+            }
+            String prefix=buf.toString();
+            String str="[\""+prefix+"\",\""+prefix+"\\\"x\\\\\",\""+prefix+"\u00e6\u00f8\u00e5 long enough to fill a few words\"]";
+            byte[] data=utf8(str);
+            ByteBuffer little=ByteBuffer.allocateDirect(data.length).order(ByteOrder.LITTLE_ENDIAN);
+            little.put(data);
+            little.flip();
+            LazyArray[] arrays=new LazyArray[]{new LazyArray(str),new LazyArray(data),new LazyArray(little)};
+            for(LazyArray array:arrays){
+                assertEquals(3,array.length());
+                assertEquals(prefix,array.getString(0));
+                assertEquals(prefix+"\"x\\",array.getString(1));
+                assertEquals(prefix+"\u00e6\u00f8\u00e5 long enough to fill a few words",array.getString(2));
+            }
+        }
+    }
+
+    @Test
+    public void testEscapedMultiByteStrings() throws LazyException{
+        String[] values=new String[]{
+            "\\n\u00e6",
+            "\u00f8\\t\\u20ac\u20ac\\\\",
+            "\ud83d\ude00\\\"\ud83d\ude00\\ud83d\\ude00x",
+            "a\\/b\\b\\f\\r\u00e6\u00f8\u00e5\\u0041"
+        };
+        String[] expected=new String[]{
+            "\n\u00e6",
+            "\u00f8\t\u20ac\u20ac\\",
+            "\ud83d\ude00\"\ud83d\ude00\ud83d\ude00x",
+            "a/b\b\f\r\u00e6\u00f8\u00e5A"
+        };
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<values.length;i++){
+            if(i>0){
+                buf.append(',');
+            }
+            buf.append('"').append(values[i]).append('"');
+        }
+        String str=buf.append(']').toString();
+        byte[] data=utf8(str);
+        ByteBuffer direct=ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        direct.flip();
+        LazyArray[] arrays=new LazyArray[]{new LazyArray(data),new LazyArray(direct),new LazyArray(new StringBuilder(str))};
+        for(LazyArray array:arrays){
+            for(int i=0;i<expected.length;i++){
+                assertEquals(expected[i],array.getString(i));
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedEscapedString() throws LazyException{
+        // Invalid UTF-8 is replaced the same way with or without escapes
+        byte[] data=new byte[]{'[','"','\\','n',(byte)0xC3,'"',',','"',(byte)0xC3,'"',']'};
+        LazyArray array=new LazyArray(data);
+        assertEquals("\n\ufffd",array.getString(0));
+        assertEquals("\ufffd",array.getString(1));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidUnicodeEscape() throws LazyException{
+        new LazyArray(utf8("[\"\u00e6\\u00zz\"]")).getString(0);
+    }
+
+    @Test
+    public void testTruncatedUnicodeEscape() throws LazyException{
+        String[] docs=new String[]{"[\"\\/\\n\\ue9\"]","[\"?{\\ud83d\\ue0\"]","[\"\u00e6\\t\\u0\"]"};
+        for(String doc:docs){
+            try{
+                new LazyArray(utf8(doc)).getString(0);
+                fail("Expected error for "+doc);
+            }catch(LazyException e){
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnterminatedLongString() throws LazyException{
+        new LazyArray(utf8("[\"this string never ends and is longer than a few words"));
+    }
+}
@@ -0,0 +1,74 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+
+public class CharSourceTest{
+    private static final String HEADER="FRAME 0042\n";
+    private static final String DOC="{\"foo\":42,\"bar\":\"b\\\"a\\u00e6r\",\"list\":[1.5,true,null,{\"x\":\"y\"}]}";
+
+    @Test
+    public void testCharArraySlice() throws LazyException{
+        char[] frame=(HEADER+DOC+"TRAILER").toCharArray();
+        LazyObject obj=new LazyObject(frame,HEADER.length(),DOC.length());
+        assertEquals(42,obj.getInt("foo"));
+        assertEquals("b\"a\u00e6r",obj.getString("bar"));
+        assertEquals("y",obj.getJSONArray("list").getJSONObject(3).getString("x"));
+        assertEquals(DOC,obj.toString());
+        // Indexes point into the full array
+        assertEquals(HEADER.length(),obj.root.startIndex);
+        assertSame(frame,obj.getCharBuffer());
+    }
+
+    @Test
+    public void testCharArrayArray() throws LazyException{
+        char[] frame="xx[1,2,3]yy".toCharArray();
+        LazyArray array=new LazyArray(frame,2,7);
+        assertEquals(3,array.length());
+        assertEquals(3,array.getInt(2));
+        assertTrue(LazyElement.parse(frame,2,7) instanceof LazyArray);
+    }
+
+    @Test
+    public void testCharSequence() throws LazyException{
+        StringBuilder buf=new StringBuilder(DOC);
+        LazyObject obj=new LazyObject(buf);
+        assertEquals(42,obj.getInt("foo"));
+        assertEquals(42l,obj.getLong("foo"));
+        assertEquals("b\"a\u00e6r",obj.getString("bar"));
+        assertEquals(1.5,obj.getJSONArray("list").getDouble(0),0);
+        assertTrue(obj.has("list"));
+        Iterator<String> keys=obj.keys();
+        assertEquals("foo",keys.next());
+        assertEquals(DOC,obj.toString());
+        LazyArray array=new LazyArray(CharBuffer.wrap("[\"a\",{\"b\":[]}]"));
+        assertEquals("a",array.getString(0));
+        assertEquals(0,array.getJSONObject(1).getJSONArray("b").length());
+    }
+
+    @Test
+    public void testReusableParser() throws LazyException{
+        LazyParser parser=new LazyParser();
+        char[] frame=(HEADER+DOC).toCharArray();
+        LazyObject obj=(LazyObject)parser.parse(frame,HEADER.length(),DOC.length());
+        assertEquals(42,obj.getInt("foo"));
+    }
+
+    @Test
+    public void testErrorPosition(){
+        char[] frame=(HEADER+"{\"foo\":tru}").toCharArray();
+        try{
+            new LazyObject(frame,HEADER.length(),frame.length-HEADER.length());
+            fail("Bad literal should not parse");
+        }catch(LazyException e){
+            assertEquals("@"+(HEADER.length()+10)+":Syntax error",e.toString());
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidRange() throws LazyException{
+        new LazyObject(new char[4],2,3);
+    }
+}
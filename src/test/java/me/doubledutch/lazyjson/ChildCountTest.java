@@ -0,0 +1,69 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ChildCountTest{
+    private static final String DOC="{\"a\":[1,2,3],\"b\":{\"c\":[],\"d\":{}},\"e\":[[1],[2,3],\"x\"],\"f\":12345}";
+
+    private static void verify(LazyObject obj) throws LazyException{
+        assertEquals(4,obj.length());
+        assertEquals(3,obj.getJSONArray("a").length());
+        assertEquals(2,obj.getJSONObject("b").length());
+        assertEquals(0,obj.getJSONObject("b").getJSONArray("c").length());
+        assertEquals(0,obj.getJSONObject("b").getJSONObject("d").length());
+        LazyArray e=obj.getJSONArray("e");
+        assertEquals(3,e.length());
+        assertEquals(1,e.getJSONArray(0).length());
+        assertEquals(2,e.getJSONArray(1).length());
+    }
+
+    @Test
+    public void testEager() throws LazyException{
+        verify(new LazyObject(DOC));
+    }
+
+    @Test
+    public void testTape() throws LazyException{
+        verify((LazyObject)LazyElement.parseTape(DOC));
+    }
+
+    @Test
+    public void testDeferred() throws LazyException{
+        verify((LazyObject)LazyElement.parseDeferred(DOC));
+    }
+
+    @Test
+    public void testProjection() throws LazyException{
+        LazyObject obj=(LazyObject)LazyElement.parse(DOC,LazyProjection.compile("a","b.c"));
+        assertEquals(2,obj.length());
+        assertEquals(3,obj.getJSONArray("a").length());
+        assertEquals(1,obj.getJSONObject("b").length());
+    }
+
+    @Test
+    public void testIncremental() throws LazyException{
+        // Every token is cut short and rolled back at least once
+        LazyParser parser=new LazyParser();
+        char[] data=DOC.toCharArray();
+        for(int i=0;i<data.length;i++){
+            parser.feed(data,i,1);
+        }
+        verify((LazyObject)parser.endOfInput());
+    }
+
+    @Test
+    public void testReuse() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.parse("[1,2,3,4,5,6,7,8]");
+        assertEquals(1,((LazyArray)parser.parse("[[1,2,3]]")).length());
+        verify((LazyObject)parser.parse(DOC));
+    }
+
+    @Test
+    public void testReadFromBuffer() throws LazyException{
+        LazyObject obj=new LazyObject(DOC);
+        LazyNode node=LazyNode.readFromBuffer(obj.toByteArray());
+        verify(new LazyObject(node,obj.getCharBuffer()));
+    }
+}
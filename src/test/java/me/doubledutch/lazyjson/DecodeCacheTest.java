@@ -0,0 +1,75 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class DecodeCacheTest{
+    private static final String DOC="{\"plain\":\"value\",\"escaped\":\"a\\nb\\u0041\",\"nested\":{\"name\":\"inner\"},"
+        +"\"list\":[\"x\",\"y\\\"\",null],\"pi\":3.25}";
+
+    @Test
+    public void testSameInstance() throws LazyException{
+        LazyObject obj=new LazyObject(DOC);
+        obj.enableDecodeCache(64);
+        String escaped=obj.getString("escaped");
+        assertEquals("a\nbA",escaped);
+        assertSame(escaped,obj.getString("escaped"));
+        assertSame(obj.getString("plain"),obj.getString("plain"));
+        // Shared with the objects and arrays read from the document
+        String name=obj.getJSONObject("nested").getString("name");
+        assertSame(name,obj.getJSONObject("nested").getString("name"));
+        LazyArray list=obj.getJSONArray("list");
+        assertSame(list.getString(1),obj.getJSONArray("list").getString(1));
+        assertNull(list.getString(2));
+    }
+
+    @Test
+    public void testDisabledByDefault() throws LazyException{
+        LazyObject obj=new LazyObject(DOC);
+        assertNull(obj.source.decoded);
+        assertNotSame(obj.getString("escaped"),obj.getString("escaped"));
+        obj.enableDecodeCache(8);
+        obj.getString("escaped");
+        obj.disableDecodeCache();
+        assertNotSame(obj.getString("escaped"),obj.getString("escaped"));
+    }
+
+    @Test
+    public void testBounded() throws LazyException{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<1000;i++){
+            if(i>0)buf.append(',');
+            buf.append("\"v").append(i).append('"');
+        }
+        buf.append(']');
+        byte[] raw=buf.toString().getBytes(StandardCharsets.UTF_8);
+        LazyArray array=new LazyArray(ByteBuffer.wrap(raw));
+        array.enableDecodeCache(100);
+        assertEquals(64,array.source.decoded.length);
+        for(int j=0;j<3;j++){
+            for(int i=0;i<1000;i++){
+                assertEquals("v"+i,array.getString(i));
+            }
+        }
+        int used=0;
+        for(LazySource.DecodedString entry:array.source.decoded){
+            if(entry!=null)used++;
+        }
+        assertTrue(used<=64);
+    }
+
+    @Test
+    public void testNumbersKept() throws LazyException{
+        LazyObject obj=new LazyObject(DOC);
+        assertEquals(3.25,obj.getDouble("pi"),0);
+        assertEquals(3.25,obj.getDouble("pi"),0);
+        assertEquals("3.25",obj.getString("pi"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidSize() throws LazyException{
+        new LazyObject(DOC).enableDecodeCache(0);
+    }
+}
@@ -0,0 +1,83 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class DeferredParseTest{
+    private static final String DOC="{\"id\":7,\"meta\":{\"tricky\":\"}]\\\"[{\",\"list\":[1,[2,[3]],{\"x\":\"y\"}]},"
+        +"\"empty\":[],\"name\":\"deferred\"}";
+
+    @Test
+    public void testValues() throws LazyException{
+        LazyObject obj=(LazyObject)LazyElement.parseDeferred(DOC);
+        assertEquals(7,obj.getInt("id"));
+        assertEquals("deferred",obj.getString("name"));
+        assertEquals(4,obj.length());
+        LazyObject meta=obj.getJSONObject("meta");
+        assertEquals("}]\"[{",meta.getString("tricky"));
+        LazyArray list=meta.getJSONArray("list");
+        assertEquals(3,list.length());
+        assertEquals(3,list.getJSONArray(1).getJSONArray(1).getInt(0));
+        assertEquals("y",list.getJSONObject(2).getString("x"));
+        assertEquals(0,obj.getJSONArray("empty").length());
+        assertEquals("{\"x\":\"y\"}",list.getJSONObject(2).toString());
+    }
+
+    @Test
+    public void testNestedNotTokenized() throws LazyException{
+        LazyObject obj=(LazyObject)LazyElement.parseDeferred(DOC);
+        LazyNode meta=obj.root.child.next.child;
+        assertEquals(LazyNode.OBJECT,meta.type);
+        assertNull(meta.child);
+        assertEquals(LazyNode.DEFERRED,meta.pending);
+        obj.getJSONObject("meta");
+        assertEquals(LazyNode.EXPANDED,meta.pending);
+        assertEquals(2,meta.getChildCount());
+        // The nested array is only deferred itself
+        assertNull(meta.lastChild.child.child);
+    }
+
+    @Test
+    public void testSameAsEager() throws LazyException{
+        LazyObject eager=new LazyObject(DOC);
+        LazyObject deferred=(LazyObject)LazyElement.parseDeferred(DOC);
+        assertEquals(eager.toString(),deferred.toString());
+        assertTrue(Arrays.equals(eager.toByteArray(),deferred.toByteArray()));
+        assertEquals(eager.extractTemplate(),LazyElement.parseDeferred(DOC).extractTemplate());
+    }
+
+    @Test
+    public void testBytes() throws LazyException{
+        byte[] raw=DOC.getBytes(StandardCharsets.UTF_8);
+        LazyObject obj=(LazyObject)LazyElement.parseDeferred(raw,0,raw.length);
+        assertEquals("y",obj.getJSONObject("meta").getJSONArray("list").getJSONObject(2).getString("x"));
+        obj=(LazyObject)LazyElement.parseDeferred(ByteBuffer.wrap(raw));
+        assertEquals(1,obj.getJSONObject("meta").getJSONArray("list").getInt(0));
+    }
+
+    @Test
+    public void testMalformedNested() throws LazyException{
+        // The content of nested containers is only validated on access
+        LazyObject obj=(LazyObject)LazyElement.parseDeferred("{\"ok\":1,\"bad\":[1,tru]}");
+        assertEquals(1,obj.getInt("ok"));
+        try{
+            obj.getJSONArray("bad");
+            fail("Malformed array should not parse");
+        }catch(LazyException e){
+            // Expected
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnbalanced() throws LazyException{
+        LazyElement.parseDeferred("{\"foo\":[[1]}");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingComma() throws LazyException{
+        LazyElement.parseDeferred("[{\"foo\":1},]");
+    }
+}
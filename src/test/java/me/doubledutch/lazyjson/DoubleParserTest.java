@@ -0,0 +1,64 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class DoubleParserTest{
+    private static void check(String str){
+        double expected=Double.parseDouble(str);
+        char[] chars=str.toCharArray();
+        double actual=DoubleParser.parse(new LazySource(chars),0,chars.length);
+        assertEquals(str,Double.doubleToRawLongBits(expected),Double.doubleToRawLongBits(actual));
+        byte[] bytes=str.getBytes(StandardCharsets.UTF_8);
+        actual=DoubleParser.parse(new LazySource(ByteBuffer.wrap(bytes)),0,bytes.length);
+        assertEquals(str,Double.doubleToRawLongBits(expected),Double.doubleToRawLongBits(actual));
+    }
+
+    @Test
+    public void testEdgeCases(){
+        String[] values=new String[]{"0","-0","0.0","-0.0","1","-1","0.1","0.5","3.1415","1e0","1E+2","1e-2",
+            "123456789012345678","9007199254740992","9007199254740993","9007199254740995",
+            "18446744073709551615","9999999999999999999","99999999999999999999","12345678901234567890123",
+            "1.7976931348623157e308","1.7976931348623158e308","1.7976931348623159e308","1e308","1e309",
+            "2.2250738585072014e-308","2.2250738585072011e-308","2.2250738585072012e-308","4.9e-324",
+            "2.4703282292062327e-324","2.4703282292062328e-324","1e-323","1e-324","1e-400","1e-99999",
+            "1e99999","0.000000000000000000000000000000000001","7.2057594037927933e16","5e-324",
+            "2.22507385850720113605740979670913197593481954635164564e-308","0.30000000000000004",
+            "1.00000000000000011102230246251565404236316680908203125","-2.5e3","8.41e21","1448997445238699",
+            "9.5e22","7.3177701707893310e+15","3.4028235677973366e38","1e23","8.589973e9","123e-45"};
+        for(String value:values){
+            check(value);
+        }
+    }
+
+    @Test
+    public void testRandom(){
+        Random random=new Random(42);
+        for(int i=0;i<100000;i++){
+            check(Double.toString(Double.longBitsToDouble(random.nextLong()&0x7FFFFFFFFFFFFFFFL)).replace("Infinity","1e400").replace("NaN","0"));
+            check(Double.toString(random.nextDouble()*Math.pow(10,random.nextInt(40)-20)));
+            // Random digit strings with an exponent
+            StringBuilder buf=new StringBuilder();
+            int digits=1+random.nextInt(20);
+            buf.append((char)('1'+random.nextInt(9)));
+            for(int j=1;j<digits;j++){
+                buf.append((char)('0'+random.nextInt(10)));
+            }
+            buf.append('e').append(random.nextInt(700)-350);
+            check(buf.toString());
+        }
+    }
+
+    @Test
+    public void testAccessors() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":0.1,\"b\":-7,\"c\":\"2.5\",\"d\":[1e-7,6.02214076e23]}");
+        assertEquals(0.1,obj.getDouble("a"),0);
+        assertEquals(-7.0,obj.getDouble("b"),0);
+        assertEquals(2.5,obj.getDouble("c"),0);
+        assertEquals(1e-7,obj.getJSONArray("d").getDouble(0),0);
+        assertEquals(6.02214076e23,obj.getJSONArray("d").optDouble(1),0);
+    }
+}
@@ -0,0 +1,64 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class FieldIndexTest{
+    private static String wideObject(int fields){
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<fields;i++){
+            if(i>0)buf.append(',');
+            buf.append("\"field").append(i).append("\":").append(i);
+        }
+        buf.append(",\"caf\u00e9\":\"accent\",\"field0\":\"duplicate\",\"\":\"empty\"}");
+        return buf.toString();
+    }
+
+    private void checkLookups(LazyObject obj,int fields) throws LazyException{
+        for(int j=0;j<3;j++){
+            for(int i=0;i<fields;i++){
+                assertEquals(i,obj.getInt("field"+i));
+                assertTrue(obj.has("field"+i));
+            }
+            // The first of several fields with the same name wins
+            assertEquals(0,obj.getInt("field0"));
+            assertEquals("accent",obj.getString("caf\u00e9"));
+            assertEquals("empty",obj.getString(""));
+            assertFalse(obj.has("field"+fields));
+            assertFalse(obj.has("cafe"));
+            assertNull(obj.optString("missing"));
+            try{
+                obj.getInt("missing");
+                fail("Missing field should not be found");
+            }catch(LazyException e){
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testWideObject() throws LazyException{
+        String str=wideObject(300);
+        checkLookups(new LazyObject(str),300);
+        byte[] raw=str.getBytes(StandardCharsets.UTF_8);
+        checkLookups(new LazyObject(raw),300);
+        checkLookups(new LazyObject(ByteBuffer.wrap(raw)),300);
+        checkLookups(new LazyObject(new StringBuilder(str)),300);
+    }
+
+    @Test
+    public void testSmallObject() throws LazyException{
+        checkLookups(new LazyObject(wideObject(3)),3);
+        checkLookups(new LazyObject(wideObject(15)),15);
+        checkLookups(new LazyObject(wideObject(16)),16);
+    }
+
+    @Test
+    public void testNestedWideObject() throws LazyException{
+        LazyObject obj=new LazyObject("{\"inner\":"+wideObject(64)+"}");
+        LazyObject inner=obj.getJSONObject("inner");
+        checkLookups(inner,64);
+    }
+}
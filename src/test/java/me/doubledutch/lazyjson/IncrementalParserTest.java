@@ -0,0 +1,172 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class IncrementalParserTest{
+    private static final String DOC="{\"foo\" : [1,-2.5e3,true,false,null],\"bar\":{\"baz\":\"Hello \\\"World\\\"\"},\"n\":1234567, \"\u00e6\":\"\\u00f8\"} ";
+
+    private static void verify(LazyObject obj){
+        LazyArray array=obj.getJSONArray("foo");
+        assertEquals(5,array.length());
+        assertEquals(1,array.getInt(0));
+        assertEquals(-2500.0,array.getDouble(1),0);
+        assertTrue(array.getBoolean(2));
+        assertFalse(array.getBoolean(3));
+        assertTrue(array.isNull(4));
+        assertEquals("Hello \"World\"",obj.getJSONObject("bar").getString("baz"));
+        assertEquals(1234567,obj.getInt("n"));
+        assertEquals("\u00f8",obj.getString("\u00e6"));
+        assertEquals(4,obj.length());
+    }
+
+    @Test
+    public void testCharChunks() throws LazyException{
+        char[] data=DOC.toCharArray();
+        for(int chunk=1;chunk<=data.length;chunk++){
+            LazyParser parser=new LazyParser();
+            for(int i=0;i<data.length;i+=chunk){
+                parser.feed(data,i,Math.min(chunk,data.length-i));
+            }
+            verify((LazyObject)parser.endOfInput());
+        }
+    }
+
+    @Test
+    public void testByteChunks() throws LazyException{
+        byte[] data=DOC.getBytes(StandardCharsets.UTF_8);
+        for(int chunk=1;chunk<=data.length;chunk++){
+            LazyParser parser=new LazyParser();
+            for(int i=0;i<data.length;i+=chunk){
+                parser.feed(ByteBuffer.wrap(data,i,Math.min(chunk,data.length-i)));
+            }
+            verify((LazyObject)parser.endOfInput());
+        }
+    }
+
+    @Test
+    public void testLargeChunks() throws LazyException{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<10000;i++){
+            if(i>0)buf.append(",");
+            buf.append("{\"id\":"+i+",\"name\":\"item "+i+"\"}");
+        }
+        buf.append("]");
+        byte[] data=buf.toString().getBytes(StandardCharsets.UTF_8);
+        LazyParser parser=new LazyParser();
+        for(int i=0;i<data.length;i+=8192){
+            parser.feed(ByteBuffer.wrap(data,i,Math.min(8192,data.length-i)));
+        }
+        LazyArray array=(LazyArray)parser.endOfInput();
+        assertEquals(10000,array.length());
+        assertEquals("item 9999",array.getJSONObject(9999).getString("name"));
+    }
+
+    @Test
+    public void testLargeString() throws LazyException{
+        // A string cut by every chunk is scanned once, not once per chunk
+        StringBuilder buf=new StringBuilder();
+        while(buf.length()<4<<20){
+            buf.append("some text \\n bl\u00e5b\u00e6r \ud83d\ude00 \\u00e6 ");
+        }
+        String value=buf.toString();
+        byte[] data=("{\"big\":\""+value+"\",\"next\":1}").getBytes(StandardCharsets.UTF_8);
+        LazyParser parser=new LazyParser();
+        for(int i=0;i<data.length;i+=1000){
+            parser.feed(ByteBuffer.wrap(data,i,Math.min(1000,data.length-i)));
+        }
+        LazyObject obj=(LazyObject)parser.endOfInput();
+        String expected=value.replace("\\n","\n").replace("\\u00e6","\u00e6");
+        assertEquals(expected,obj.getString("big"));
+        assertEquals(1,obj.getInt("next"));
+        char[] chars=("["+"\""+value+"\"]").toCharArray();
+        parser.reset();
+        for(int i=0;i<chars.length;i+=999){
+            parser.feed(chars,i,Math.min(999,chars.length-i));
+        }
+        assertEquals(expected,((LazyArray)parser.endOfInput()).getString(0));
+    }
+
+    @Test
+    public void testSplitValues() throws LazyException{
+        String str="{\"a\\\"b\"  :  -12345678901234567890.0123456789e-12 ,\"c\":[-1234567890123,0.5E+10,1e5,true,false,null,\"x\\u00e6y\"]}";
+        char[] data=str.toCharArray();
+        for(int chunk=1;chunk<=data.length;chunk++){
+            LazyParser parser=new LazyParser();
+            for(int i=0;i<data.length;i+=chunk){
+                parser.feed(data,i,Math.min(chunk,data.length-i));
+            }
+            LazyObject obj=(LazyObject)parser.endOfInput();
+            assertEquals(-12345678901234567890.0123456789e-12,obj.getDouble("a\\\"b"),0);
+            LazyArray array=obj.getJSONArray("c");
+            assertEquals(-1234567890123l,array.getLong(0));
+            assertEquals(0.5E+10,array.getDouble(1),0);
+            assertEquals(1e5,array.getDouble(2),0);
+            assertTrue(array.getBoolean(3));
+            assertFalse(array.getBoolean(4));
+            assertTrue(array.isNull(5));
+            assertEquals("x\u00e6y",array.getString(6));
+        }
+    }
+
+    @Test
+    public void testSplitErrors() throws LazyException{
+        String[] docs=new String[]{"[12.e5]","[1e+x]","[-x]","[trux]","[nul1]","[\"ab\\\"]"};
+        for(String doc:docs){
+            char[] data=doc.toCharArray();
+            for(int chunk=1;chunk<=data.length;chunk++){
+                LazyParser parser=new LazyParser();
+                try{
+                    for(int i=0;i<data.length;i+=chunk){
+                        parser.feed(data,i,Math.min(chunk,data.length-i));
+                    }
+                    parser.endOfInput();
+                    fail("Expected error for "+doc);
+                }catch(LazyException e){
+                    // Expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFailEarly() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.feed("{\"foo\":tr".toCharArray(),0,9);
+        try{
+            parser.feed("ee}".toCharArray(),0,3);
+            fail("Expected syntax error before end of input");
+        }catch(LazyException e){
+            // Expected
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncated() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.feed("{\"foo\":\"bar".toCharArray(),0,11);
+        parser.endOfInput();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingData() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.feed("{} ".toCharArray(),0,3);
+        parser.feed("{".toCharArray(),0,1);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMixedInput() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.feed("{".toCharArray(),0,1);
+        parser.feed(ByteBuffer.wrap(new byte[]{'}'}));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testEmptyInput() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.endOfInput();
+    }
+}
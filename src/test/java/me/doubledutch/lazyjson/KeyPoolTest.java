@@ -0,0 +1,64 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+public class KeyPoolTest{
+    private static final String DOC="{\"userId\":1,\"timestamp\":2,\"nested\":{\"userId\":3}}";
+
+    @Test
+    public void testSharedAcrossDocuments() throws LazyException{
+        LazyKeyPool pool=new LazyKeyPool();
+        LazyObject first=new LazyObject(DOC);
+        first.setKeyPool(pool);
+        byte[] raw=DOC.getBytes(StandardCharsets.UTF_8);
+        LazyObject second=new LazyObject(ByteBuffer.wrap(raw));
+        second.setKeyPool(pool);
+        Iterator<String> a=first.keys();
+        Iterator<String> b=second.keys();
+        while(a.hasNext()){
+            String key=a.next();
+            assertSame(key,b.next());
+        }
+        assertFalse(b.hasNext());
+        // Nested objects use the pool of their document
+        assertSame(first.keys().next(),second.getJSONObject("nested").keys().next());
+    }
+
+    @Test
+    public void testValues() throws LazyException{
+        LazyKeyPool pool=new LazyKeyPool(2);
+        assertEquals(2,pool.capacity());
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":2,\"c\":3,\"d\\u00e9\":4,\"\\u00e9\":5}");
+        obj.setKeyPool(pool);
+        for(int i=0;i<3;i++){
+            Iterator<String> keys=obj.keys();
+            assertEquals("a",keys.next());
+            assertEquals("b",keys.next());
+            assertEquals("c",keys.next());
+            assertEquals("d\\u00e9",keys.next());
+            assertEquals("\\u00e9",keys.next());
+        }
+        obj.setKeyPool(null);
+        assertNotSame(obj.keys().next(),obj.keys().next());
+    }
+
+    @Test
+    public void testReusableParser() throws LazyException{
+        LazyKeyPool pool=new LazyKeyPool(64);
+        LazyParser parser=new LazyParser();
+        parser.setKeyPool(pool);
+        String key=((LazyObject)parser.parse(DOC)).keys().next();
+        String again=((LazyObject)parser.parse(DOC.getBytes(StandardCharsets.UTF_8),0,DOC.length())).keys().next();
+        assertEquals("userId",key);
+        assertSame(key,again);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidSize(){
+        new LazyKeyPool(0);
+    }
+}
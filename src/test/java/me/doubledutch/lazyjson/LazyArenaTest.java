@@ -0,0 +1,78 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class LazyArenaTest{
+    @Test
+    public void testSharedArena() throws LazyException{
+        LazyArena arena=new LazyArena(3);
+        LazyObject[] docs=new LazyObject[10];
+        for(int i=0;i<docs.length;i++){
+            docs[i]=(LazyObject)LazyElement.parse("{\"i\":"+i+",\"list\":[1,2,{\"x\":\"y\"}]}",arena);
+        }
+        for(int i=0;i<docs.length;i++){
+            assertEquals(i,docs[i].getInt("i"));
+            assertEquals("y",docs[i].getJSONArray("list").getJSONObject(2).getString("x"));
+        }
+        assertEquals(100,arena.size());
+        assertEquals(102,arena.capacity());
+    }
+
+    @Test
+    public void testRecycle() throws LazyException{
+        LazyArena arena=new LazyArena();
+        LazyElement first=LazyElement.parse("[1,2,3]",arena);
+        LazyNode root=first.root;
+        arena.recycle();
+        assertEquals(0,arena.size());
+        LazyObject second=(LazyObject)LazyElement.parse("{\"foo\":\"bar\"}",arena);
+        assertSame(root,second.root);
+        assertEquals("bar",second.getString("foo"));
+        assertEquals(256,arena.capacity());
+    }
+
+    @Test
+    public void testRelease() throws LazyException{
+        LazyArena arena=new LazyArena(4);
+        LazyObject obj=(LazyObject)LazyElement.parse("{\"a\":[true,false]}",arena);
+        arena.release();
+        assertEquals(0,arena.size());
+        assertEquals(0,arena.capacity());
+        // Released tokens are no longer handed out, the element stays intact
+        LazyElement.parse("[null,null,null,null,null]",arena);
+        assertTrue(obj.getJSONArray("a").getBoolean(0));
+    }
+
+    @Test
+    public void testBrokenDocument() throws LazyException{
+        LazyArena arena=new LazyArena(2);
+        byte[] raw="[1,2]".getBytes(StandardCharsets.UTF_8);
+        LazyElement.parse(raw,0,raw.length,arena);
+        try{
+            LazyElement.parse("{\"foo\":[1,2,3",arena);
+            fail("Broken document should not parse");
+        }catch(LazyException e){
+            // Expected
+        }
+        assertEquals(3,arena.size());
+        LazyArray array=(LazyArray)LazyElement.parse(ByteBuffer.wrap(raw),arena);
+        assertEquals(2,array.getInt(1));
+        assertEquals(6,arena.size());
+    }
+
+    @Test
+    public void testIncrementalRollback() throws LazyException{
+        LazyParser parser=new LazyParser();
+        String str="{\"foo\":[1,22,333,\"four\",null,true,{\"x\":5}]}";
+        for(int i=0;i<str.length();i++){
+            parser.feed(str.toCharArray(),i,1);
+        }
+        LazyObject obj=(LazyObject)parser.endOfInput();
+        assertEquals(333,obj.getJSONArray("foo").getInt(2));
+        assertEquals(5,obj.getJSONArray("foo").getJSONObject(6).getInt("x"));
+        assertEquals(12,parser.arena.size());
+    }
+}
@@ -159,6 +159,84 @@ public class LazyArrayTest{
         assertEquals("foo\r\n",array.getString(1));
     }
 
+    @Test
+    public void testUnicodeEscapeValues() throws LazyException{
+        String str="[\"\\u00e9t\\u00C9\",\"\\uD83D\\uDE00!\",\"a\\\"b\\\\c\\/d\\b\\f\",\"\\u0041\\u0042\\u0043\"]";
+        LazyArray array=new LazyArray(str);
+        assertEquals("\u00e9t\u00c9",array.getString(0));
+        assertEquals("\ud83d\ude00!",array.getString(1));
+        assertEquals(0x1F600,array.getString(1).codePointAt(0));
+        assertEquals("a\"b\\c/d\b\f",array.getString(2));
+        assertEquals("ABC",array.getString(3));
+        // The same result from a tape and from serialized tokens
+        LazyArray tape=(LazyArray)LazyElement.parseTape(str);
+        LazyArray copy=new LazyArray(LazyNode.readFromBuffer(array.toByteArray()),array.getCharBuffer());
+        LazyNode token=array.root.child;
+        LazyNode tapeToken=tape.root.child;
+        LazyNode copyToken=copy.root.child;
+        for(int i=0;i<4;i++){
+            // The length saved by unescaping is known without counting again
+            assertTrue(token.number>0);
+            assertEquals(token.number,tapeToken.number);
+            assertEquals(token.number,copyToken.number);
+            assertEquals(array.getString(i),tape.getString(i));
+            assertEquals(array.getString(i),copy.getString(i));
+            token=token.next;
+            tapeToken=tapeToken.next;
+            copyToken=copyToken.next;
+        }
+    }
+
+    @Test
+    public void testEscapedValuesOnTape() throws LazyException{
+        String str="[{\"a\":\"x\\ny\",\"b\":[\"\\t\",1]},\"\\u0041\",true]";
+        LazyArray tape=(LazyArray)LazyElement.parseTape(str);
+        assertEquals(3,tape.length());
+        LazyObject obj=tape.getJSONObject(0);
+        assertEquals("x\ny",obj.getString("a"));
+        assertEquals("\t",obj.getJSONArray("b").getString(0));
+        assertEquals(1,obj.getJSONArray("b").getInt(1));
+        assertEquals("A",tape.getString(1));
+        assertTrue(tape.getBoolean(2));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidUnicodeEscape() throws LazyException{
+        new LazyArray("[\"\\u00g1\"]").getString(0);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidEscape() throws LazyException{
+        new LazyArray("[\"\\x\"]").getString(0);
+    }
+
+    @Test
+    public void testTruncatedUnicodeEscape() throws LazyException{
+        // A cut off unicode escape after a valid escape is rejected by the
+        // parser, with every source and tokenizer
+        String[] docs=new String[]{"[\"\\/\\n\\ue9\"]","[\"?{\\ud83d\\ue0\"]","{\"a\\t\\u00\":1}","[\"\\n\\u12\\\"]"};
+        for(String doc:docs){
+            try{
+                new LazyArray(doc);
+                fail("Expected error for "+doc);
+            }catch(LazyException e){
+                assertEquals("Invalid unicode escape sequence",e.getMessage());
+            }
+            try{
+                LazyElement.parseTape(doc);
+                fail("Expected error for "+doc);
+            }catch(LazyException e){
+                // Expected
+            }
+            try{
+                LazyParser.validate(doc);
+                fail("Expected error for "+doc);
+            }catch(LazyException e){
+                // Expected
+            }
+        }
+    }
+
     @Test
     public void testDoubleValues() throws LazyException{
         String str="[0.9,3.1415,-3.78,1.2345e+1,1.2345e-1,1.2345E+1,1.2345E-1,2e+1,2e-1,2e1,0.34e-10]";
@@ -240,4 +318,60 @@ public class LazyArrayTest{
         assertNotNull(obj2);
         assertEquals(obj.getString("[]"),"{}");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRandomAccess() throws LazyException{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<1000;i++){
+            if(i>0)buf.append(',');
+            buf.append(i*3);
+        }
+        buf.append("]");
+        LazyArray array=new LazyArray(buf.toString());
+        assertEquals(0,array.getInt(0));
+        assertEquals(3,array.getInt(1));
+        assertEquals(2997,array.getInt(999));
+        for(int i=999;i>=0;i--){
+            assertEquals(i*3,array.getInt(i));
+        }
+        // Binary search for a value
+        int low=0;
+        int high=array.length()-1;
+        int found=-1;
+        while(low<=high){
+            int mid=(low+high)>>>1;
+            int value=array.getInt(mid);
+            if(value<1500)low=mid+1;
+            else if(value>1500)high=mid-1;
+            else{
+                found=mid;
+                break;
+            }
+        }
+        assertEquals(500,found);
+        assertEquals(0,array.optInt(1000));
+        try{
+            array.getInt(1000);
+            fail("Index past the end should not be found");
+        }catch(LazyException e){
+            // Expected
+        }
+        try{
+            array.getInt(-1);
+            fail("Negative index should not be found");
+        }catch(LazyException e){
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRandomAccessBytes() throws LazyException{
+        byte[] raw="[\"a\",{\"b\":1},[2],\"d\"]".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        LazyArray array=new LazyArray(raw);
+        assertEquals("d",array.getString(3));
+        assertEquals(2,array.getJSONArray(2).getInt(0));
+        assertEquals(1,array.getJSONObject(1).getInt("b"));
+        assertEquals("a",array.getString(0));
+        assertNull(array.optString(4));
+    }
+}
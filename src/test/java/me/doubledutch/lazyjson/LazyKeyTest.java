@@ -0,0 +1,88 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class LazyKeyTest{
+    private static final LazyKey NAME=new LazyKey("name");
+    private static final LazyKey COUNT=new LazyKey("count");
+    private static final LazyKey TOTAL=new LazyKey("total");
+    private static final LazyKey RATIO=new LazyKey("ratio");
+    private static final LazyKey ACTIVE=new LazyKey("active");
+    private static final LazyKey NOTHING=new LazyKey("nothing");
+    private static final LazyKey CHILD=new LazyKey("child");
+    private static final LazyKey LIST=new LazyKey("list");
+    private static final LazyKey ACCENT=new LazyKey("caf\u00e9");
+    private static final LazyKey MISSING=new LazyKey("missing");
+
+    private static final String DOC="{\"name\":\"lazy\",\"count\":7,\"total\":5000000000,\"ratio\":0.5,"
+        +"\"active\":true,\"nothing\":null,\"child\":{\"name\":\"inner\"},\"list\":[1,2],\"caf\u00e9\":\"accent\"}";
+
+    private void checkKeys(LazyObject obj) throws LazyException{
+        assertEquals("lazy",obj.getString(NAME));
+        assertEquals(7,obj.getInt(COUNT));
+        assertEquals(5000000000L,obj.getLong(TOTAL));
+        assertEquals(0.5,obj.getDouble(RATIO),0);
+        assertTrue(obj.getBoolean(ACTIVE));
+        assertTrue(obj.isNull(NOTHING));
+        assertEquals("inner",obj.getJSONObject(CHILD).getString(NAME));
+        assertEquals(2,obj.getJSONArray(LIST).getInt(1));
+        assertEquals("accent",obj.getString(ACCENT));
+        assertTrue(obj.has(ACCENT));
+        assertFalse(obj.has(MISSING));
+        assertNull(obj.optString(MISSING));
+        assertEquals("default",obj.optString(MISSING,"default"));
+        assertEquals(3,obj.optInt(MISSING,3));
+        assertEquals(0L,obj.optLong(MISSING));
+        assertEquals(1.5,obj.optDouble(MISSING,1.5),0);
+        assertTrue(obj.optBoolean(MISSING,true));
+        assertNull(obj.optJSONObject(NOTHING));
+        assertNull(obj.optJSONArray(MISSING));
+        try{
+            obj.getString(MISSING);
+            fail("Missing field should not be found");
+        }catch(LazyException e){
+            assertTrue(e.getMessage().contains("missing"));
+        }
+    }
+
+    @Test
+    public void testSources() throws LazyException{
+        checkKeys(new LazyObject(DOC));
+        byte[] raw=DOC.getBytes(StandardCharsets.UTF_8);
+        checkKeys(new LazyObject(raw));
+        checkKeys(new LazyObject(ByteBuffer.wrap(raw)));
+        checkKeys(new LazyObject(new StringBuilder(DOC)));
+    }
+
+    @Test
+    public void testWideObject() throws LazyException{
+        StringBuilder buf=new StringBuilder("{");
+        LazyKey[] keys=new LazyKey[100];
+        for(int i=0;i<keys.length;i++){
+            if(i>0)buf.append(',');
+            buf.append("\"key").append(i).append("\":").append(i);
+            keys[i]=new LazyKey("key"+i);
+        }
+        buf.append('}');
+        byte[] raw=buf.toString().getBytes(StandardCharsets.UTF_8);
+        LazyObject[] objects={new LazyObject(buf.toString()),new LazyObject(raw)};
+        for(LazyObject obj:objects){
+            for(int j=0;j<3;j++){
+                for(int i=0;i<keys.length;i++){
+                    assertEquals(i,obj.getInt(keys[i]));
+                    // Mixing string and precompiled lookups uses the same index
+                    assertEquals(i,obj.getInt("key"+i));
+                }
+                assertFalse(obj.has(MISSING));
+            }
+        }
+    }
+
+    @Test
+    public void testToString(){
+        assertEquals("caf\u00e9",ACCENT.toString());
+    }
+}
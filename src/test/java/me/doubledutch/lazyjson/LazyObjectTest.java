@@ -375,4 +375,40 @@ public class LazyObjectTest{
         assertEquals("DoubleDutch",user.getString("Company"));
         assertTrue(user.isNull("Department"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEscapedFieldName() throws LazyException{
+        String str="{\"a\\\"b\":1,\"c\":\"d\"}";
+        LazyObject obj=new LazyObject(str);
+        assertEquals(LazyNode.FIELD,obj.root.child.type);
+        assertEquals(2,obj.length());
+        assertEquals("d",obj.getString("c"));
+        assertEquals(str,obj.toString());
+    }
+
+    @Test
+    public void testSequentialLookups() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":2,\"c\":3,\"d\":4,\"e\":5}");
+        // In order, out of order, repeated and wrapping around
+        String[] keys={"a","b","c","d","e","c","a","e","e","b","d","a","b"};
+        for(String key:keys){
+            assertEquals(key.charAt(0)-'a'+1,obj.getInt(key));
+        }
+        assertFalse(obj.has("f"));
+        assertEquals(4,obj.getInt("d"));
+        assertFalse(obj.has("f"));
+        assertEquals(5,obj.getInt("e"));
+    }
+
+    @Test
+    public void testSequentialLookupsWithDuplicates() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":2,\"a\":3,\"c\":4}");
+        assertEquals(1,obj.getInt("a"));
+        assertEquals(2,obj.getInt("b"));
+        // The first field with the name is still found
+        assertEquals(1,obj.getInt("a"));
+        assertEquals(4,obj.getInt("c"));
+        assertEquals(2,obj.getInt("b"));
+        assertEquals(1,obj.getInt("a"));
+    }
+}
@@ -0,0 +1,161 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LazyStreamTest{
+    private static final String DOCS="{\"a\":1}{\"b\":[2,3]}[4] \n\t{\"c\":\"}{\"}[]{}\r\n";
+
+    private void checkDocs(LazyStream stream) throws IOException,LazyException{
+        assertEquals(1,((LazyObject)stream.next()).getInt("a"));
+        assertEquals(3,((LazyObject)stream.next()).getJSONArray("b").getInt(1));
+        assertEquals(4,((LazyArray)stream.next()).getInt(0));
+        LazyObject obj=(LazyObject)stream.next();
+        assertEquals("}{",obj.getString("c"));
+        assertEquals("{\"c\":\"}{\"}",obj.toString());
+        assertEquals(0,((LazyArray)stream.next()).length());
+        assertEquals(0,((LazyObject)stream.next()).length());
+        assertNull(stream.next());
+        assertNull(stream.next());
+    }
+
+    @Test
+    public void testBuffers() throws IOException,LazyException{
+        checkDocs(new LazyStream(DOCS));
+        char[] chars=("xx"+DOCS).toCharArray();
+        checkDocs(new LazyStream(chars,2,chars.length-2));
+        byte[] raw=DOCS.getBytes(StandardCharsets.UTF_8);
+        checkDocs(new LazyStream(raw,0,raw.length));
+        checkDocs(new LazyStream(ByteBuffer.wrap(raw)));
+    }
+
+    @Test
+    public void testReader() throws IOException,LazyException{
+        checkDocs(new LazyStream(new StringReader(DOCS)));
+        checkDocs(new LazyStream(new TrickleReader(DOCS)));
+    }
+
+    @Test
+    public void testLargeStream() throws IOException,LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<2000;i++){
+            buf.append("{\"i\":").append(i).append(",\"pad\":\"");
+            for(int j=0;j<i%50;j++){
+                buf.append("xyz");
+            }
+            buf.append("\"}");
+        }
+        // One document larger than the initial buffer
+        buf.append("[");
+        for(int i=0;i<10000;i++){
+            buf.append(i).append(',');
+        }
+        buf.append("-1]");
+        LazyStream stream=new LazyStream(new TrickleReader(buf.toString()));
+        List<LazyElement> elements=new ArrayList<LazyElement>();
+        LazyElement element;
+        while((element=stream.next())!=null){
+            elements.add(element);
+        }
+        assertEquals(2001,elements.size());
+        // Elements returned earlier are still valid
+        for(int i=0;i<2000;i++){
+            assertEquals(i,((LazyObject)elements.get(i)).getInt("i"));
+            assertEquals(3*(i%50),((LazyObject)elements.get(i)).getString("pad").length());
+        }
+        LazyArray last=(LazyArray)elements.get(2000);
+        assertEquals(10001,last.length());
+        assertEquals(9999,last.getInt(9999));
+    }
+
+    @Test
+    public void testLargeDocument() throws IOException,LazyException{
+        // The partial document is carried over each time the buffer grows
+        StringBuilder buf=new StringBuilder("[1]{\"list\":[");
+        for(int i=0;i<20000;i++){
+            buf.append("{\"i\":").append(i).append(",\"s\":\"a\\tb\"},");
+        }
+        buf.append("null],\"big\":\"");
+        StringBuilder value=new StringBuilder();
+        while(value.length()<1<<20){
+            value.append("some text \\\" more ");
+        }
+        buf.append(value).append("\",\"last\":-2.5e-3}[2]");
+        for(int chunk:new int[]{7,1000,65536}){
+            LazyStream stream=new LazyStream(new TrickleReader(buf.toString(),chunk));
+            assertEquals(1,((LazyArray)stream.next()).getInt(0));
+            LazyObject obj=(LazyObject)stream.next();
+            LazyArray list=obj.getJSONArray("list");
+            assertEquals(20001,list.length());
+            assertEquals(12345,list.getJSONObject(12345).getInt("i"));
+            assertEquals("a\tb",list.getJSONObject(19999).getString("s"));
+            assertTrue(list.isNull(20000));
+            assertEquals(value.toString().replace("\\\"","\""),obj.getString("big"));
+            assertEquals(-2.5e-3,obj.getDouble("last"),0);
+            assertEquals(2,((LazyArray)stream.next()).getInt(0));
+            assertNull(stream.next());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException,LazyException{
+        assertNull(new LazyStream("").next());
+        assertNull(new LazyStream(" \n ").next());
+        assertNull(new LazyStream(new StringReader(" ")).next());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncated() throws IOException,LazyException{
+        LazyStream stream=new LazyStream(new StringReader("{\"a\":1}{\"b\":"));
+        assertNotNull(stream.next());
+        stream.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testGarbage() throws IOException,LazyException{
+        LazyStream stream=new LazyStream("[1]x[2]");
+        assertNotNull(stream.next());
+        stream.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingComma() throws IOException,LazyException{
+        new LazyStream("[1,]").next();
+    }
+
+    // Hands out the data a few characters at a time
+    private static final class TrickleReader extends Reader{
+        private final String data;
+        private final int chunk;
+        private int position=0;
+
+        TrickleReader(String data){
+            this(data,7);
+        }
+
+        TrickleReader(String data,int chunk){
+            this.data=data;
+            this.chunk=chunk;
+        }
+
+        public int read(char[] buf,int offset,int length){
+            if(position==data.length()){
+                return -1;
+            }
+            int size=Math.min(Math.min(length,chunk),data.length()-position);
+            data.getChars(position,position+size,buf,offset);
+            position+=size;
+            return size;
+        }
+
+        public void close(){
+        }
+    }
+}
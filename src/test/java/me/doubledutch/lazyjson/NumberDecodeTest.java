@@ -0,0 +1,101 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import me.doubledutch.lazyjson.compressor.*;
+
+public class NumberDecodeTest{
+    private static final String DOC="[0,-0,7,-42,2147483647,-2147483648,2147483648,-2147483649,"
+        +"9223372036854775807,-9223372036854775808,9223372036854775808,-9223372036854775809,"
+        +"123456789012345678,1234567890123456789,00000000000000000000001,1.5]";
+
+    private void checkValues(LazyArray array) throws LazyException{
+        assertEquals(0,array.getInt(0));
+        assertEquals(0,array.getInt(1));
+        assertEquals(7,array.getInt(2));
+        assertEquals(-42,array.getInt(3));
+        assertEquals(Integer.MAX_VALUE,array.getInt(4));
+        assertEquals(Integer.MIN_VALUE,array.getInt(5));
+        assertEquals(2147483648L,array.getLong(6));
+        assertEquals(-2147483649L,array.getLong(7));
+        assertEquals(Long.MAX_VALUE,array.getLong(8));
+        assertEquals(Long.MIN_VALUE,array.getLong(9));
+        assertEquals(9223372036854775808.0,array.getDouble(10),0);
+        assertEquals(-9223372036854775809.0,array.getDouble(11),0);
+        assertEquals(123456789012345678L,array.getLong(12));
+        assertEquals(1234567890123456789L,array.getLong(13));
+        assertEquals(1,array.getInt(14));
+        assertEquals(2147483647.0,array.getDouble(4),0);
+    }
+
+    @Test
+    public void testValues() throws LazyException{
+        checkValues(new LazyArray(DOC));
+        byte[] raw=DOC.getBytes(StandardCharsets.UTF_8);
+        checkValues(new LazyArray(ByteBuffer.wrap(raw)));
+        checkValues((LazyArray)LazyElement.parseTape(DOC));
+        checkValues((LazyArray)LazyElement.parseDeferred(DOC));
+    }
+
+    @Test
+    public void testClassifiedWhileParsing() throws LazyException{
+        LazyArray array=new LazyArray(DOC);
+        LazyNode token=array.root.child;
+        assertEquals(LazyNode.NUMBER_INT,token.numberClass);
+        for(int i=0;i<6;i++){
+            token=token.next;
+        }
+        assertEquals(LazyNode.NUMBER_LONG,token.numberClass);
+        assertEquals(2147483648L,token.number);
+        // Too many digits to be sure while parsing
+        token=token.next.next;
+        assertEquals(LazyNode.NUMBER_UNKNOWN,token.numberClass);
+        array.getLong(8);
+        assertEquals(LazyNode.NUMBER_LONG,token.numberClass);
+        token=token.next.next;
+        array.getDouble(10);
+        assertEquals(LazyNode.NUMBER_BIG,token.numberClass);
+    }
+
+    @Test
+    public void testIntOverflow() throws LazyException{
+        LazyObject obj=new LazyObject("{\"big\":2147483648,\"small\":-2147483649}");
+        assertEquals(2147483648L,obj.getLong("big"));
+        try{
+            obj.getInt("big");
+            fail("Value does not fit in an int");
+        }catch(LazyException e){
+            // Expected
+        }
+        try{
+            obj.optInt("small");
+            fail("Value does not fit in an int");
+        }catch(LazyException e){
+            // Expected
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testLongOverflow() throws LazyException{
+        new LazyArray("[9223372036854775808]").getLong(0);
+    }
+
+    @Test
+    public void testTemplates() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":300,\"c\":70000,\"d\":5000000000,\"e\":50000000000000000000}");
+        Template template=obj.extractTemplate();
+        ByteBuffer buf=ByteBuffer.allocate(4096);
+        DictionaryCache dict=new DictionaryCache(100,2);
+        obj.writeTemplateValues(buf,dict);
+        buf.flip();
+        LazyObject copy=(LazyObject)LazyElement.readFromTemplate(template,buf,dict);
+        assertEquals(1,copy.getInt("a"));
+        assertEquals(300,copy.getInt("b"));
+        assertEquals(70000,copy.getInt("c"));
+        assertEquals(5000000000L,copy.getLong("d"));
+        // Integers too wide for a long are stored as doubles
+        assertEquals(5e19,copy.getDouble("e"),0);
+    }
+}
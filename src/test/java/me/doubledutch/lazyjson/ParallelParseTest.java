@@ -0,0 +1,94 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelParseTest{
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool(){
+        pool=new ForkJoinPool(8);
+    }
+
+    @AfterClass
+    public static void shutdownPool(){
+        pool.shutdown();
+    }
+
+    // Elements with strings that contain brackets, commas, quotes and escapes
+    private static String createArray(int size){
+        StringBuilder buf=new StringBuilder(" [");
+        for(int i=0;i<size;i++){
+            if(i>0)buf.append(",\n");
+            buf.append("{\"id\":"+i+",\"text\":\"a,[b]{c} \\\"d,\\\\\",\"list\":[\"],\",{\"x\":\"\\\\\\\"[\"}]}");
+        }
+        buf.append("] ");
+        return buf.toString();
+    }
+
+    private static void verify(LazyArray array,int size){
+        assertEquals(size,array.length());
+        for(int i=0;i<size;i++){
+            LazyObject obj=array.getJSONObject(i);
+            assertEquals(i,obj.getInt("id"));
+            assertEquals("a,[b]{c} \"d,\\",obj.getString("text"));
+            assertEquals("\\\"[",obj.getJSONArray("list").getJSONObject(1).getString("x"));
+        }
+    }
+
+    @Test
+    public void testParallelString() throws LazyException{
+        String str=createArray(20000);
+        verify(new LazyArray(str,pool),20000);
+        assertEquals(new LazyArray(str).toString(),new LazyArray(str,pool).toString());
+    }
+
+    @Test
+    public void testParallelBytes() throws LazyException{
+        byte[] raw=createArray(20000).getBytes(StandardCharsets.UTF_8);
+        verify(new LazyArray(ByteBuffer.wrap(raw),pool),20000);
+    }
+
+    @Test
+    public void testSingleLargeElement() throws LazyException{
+        String str="[[\""+createArray(10000).replace("\\","\\\\").replace("\"","\\\"")+"\"],1]";
+        LazyArray array=new LazyArray(str,pool);
+        assertEquals(2,array.length());
+        assertEquals(1,array.getInt(1));
+    }
+
+    @Test
+    public void testSmallArray() throws LazyException{
+        LazyArray array=new LazyArray("[1,2,3]",pool);
+        assertEquals(3,array.length());
+        assertEquals(0,new LazyArray("[]",pool).length());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingComma() throws LazyException{
+        String str=createArray(20000);
+        str=str.substring(0,str.length()-2)+",]";
+        new LazyArray(str,pool);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBrokenElement() throws LazyException{
+        String str=createArray(20000);
+        int pos=str.length()/2;
+        pos=str.indexOf("\"id\":",pos);
+        str=str.substring(0,pos)+"\"id\" "+str.substring(pos+5);
+        new LazyArray(str,pool);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testClosedEarly() throws LazyException{
+        String str=createArray(20000);
+        int pos=str.indexOf(",\n",str.length()/3);
+        str=str.substring(0,pos)+"],["+str.substring(pos+2);
+        new LazyArray(str,pool);
+    }
+}
@@ -0,0 +1,62 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ParseLinesTest{
+    @Test
+    public void testLines() throws LazyException{
+        String str="{\"id\":1}\n{\"id\":2,\"tags\":[\"a\",\"b\"]}\r\n\n  [3] \n{\"id\":4}";
+        List<LazyElement> list=LazyElement.parseLines(str);
+        assertEquals(4,list.size());
+        assertEquals(1,((LazyObject)list.get(0)).getInt("id"));
+        assertEquals("b",((LazyObject)list.get(1)).getJSONArray("tags").getString(1));
+        assertEquals(3,((LazyArray)list.get(2)).getInt(0));
+        assertEquals("{\"id\":4}",list.get(3).toString());
+    }
+
+    @Test
+    public void testBytes() throws LazyException{
+        byte[] raw="{\"name\":\"\u00e6\"}\n{\"name\":\"\u00f8\"}\n".getBytes(StandardCharsets.UTF_8);
+        List<LazyElement> list=LazyElement.parseLines(ByteBuffer.wrap(raw));
+        assertEquals(2,list.size());
+        assertEquals("\u00f8",((LazyObject)list.get(1)).getString("name"));
+        list=LazyElement.parseLines(raw,0,raw.length-1);
+        assertEquals(2,list.size());
+    }
+
+    @Test
+    public void testEmpty() throws LazyException{
+        assertEquals(0,LazyElement.parseLines("").size());
+        assertEquals(0,LazyElement.parseLines(" \n\r\n").size());
+    }
+
+    @Test
+    public void testDeepDocuments() throws LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<100;i++){
+            buf.append("{\"a\":[[[[{\"b\":[[["+i+"]]]}]]]]}\n");
+        }
+        List<LazyElement> list=LazyElement.parseLines(buf.toString());
+        assertEquals(100,list.size());
+        assertEquals(99,((LazyObject)list.get(99)).getJSONArray("a").getJSONArray(0).getJSONArray(0).getJSONArray(0).getJSONObject(0).getJSONArray("b").getJSONArray(0).getJSONArray(0).getInt(0));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissingNewLine() throws LazyException{
+        LazyElement.parseLines("{\"id\":1} {\"id\":2}");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadDocument() throws LazyException{
+        LazyElement.parseLines("{\"id\":1}\n{\"id\":}\n");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncatedDocument() throws LazyException{
+        LazyElement.parseLines("{\"id\":1}\n{\"id\":2");
+    }
+}
@@ -0,0 +1,92 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ProjectionTest{
+    private static final String DOC="{\"ts\":1234,\"user\":{\"id\":42,\"name\":\"skip me\",\"tags\":[\"a\",{\"b\":[]}]},"
+        +"\"payload\":{\"big\":[1,2,3,{\"x\":\"}]\\\"\"}],\"more\":null},"
+        +"\"event\":{\"type\":\"click\",\"target\":{\"id\":7,\"class\":\"button\"}},"
+        +"\"items\":[{\"id\":1,\"v\":true},{\"id\":2,\"v\":false}],\"flag\":false}";
+
+    @Test
+    public void testProjection() throws LazyException{
+        LazyProjection projection=LazyProjection.compile("user.id","event.target","ts","items.id");
+        LazyObject obj=(LazyObject)LazyElement.parse(DOC,projection);
+        assertEquals(1234,obj.getInt("ts"));
+        assertEquals(42,obj.getJSONObject("user").getInt("id"));
+        assertFalse(obj.getJSONObject("user").has("name"));
+        assertFalse(obj.getJSONObject("user").has("tags"));
+        assertEquals(1,obj.getJSONObject("user").length());
+        assertFalse(obj.has("payload"));
+        assertFalse(obj.has("flag"));
+        // The end of a path selects everything below it
+        LazyObject target=obj.getJSONObject("event").getJSONObject("target");
+        assertEquals(7,target.getInt("id"));
+        assertEquals("button",target.getString("class"));
+        assertFalse(obj.getJSONObject("event").has("type"));
+        // Arrays do not take up a part of the path
+        LazyArray items=obj.getJSONArray("items");
+        assertEquals(2,items.length());
+        assertEquals(2,items.getJSONObject(1).getInt("id"));
+        assertFalse(items.getJSONObject(1).has("v"));
+        assertEquals(4,obj.length());
+    }
+
+    @Test
+    public void testNodesNotCreated() throws LazyException{
+        LazyObject obj=(LazyObject)LazyElement.parse(DOC,LazyProjection.compile("ts"));
+        assertEquals(1,obj.root.getChildCount());
+        assertNull(obj.root.child.next);
+    }
+
+    @Test
+    public void testWholeSubtree() throws LazyException{
+        LazyObject obj=(LazyObject)LazyElement.parse(DOC,LazyProjection.compile("user","user.id"));
+        assertEquals("skip me",obj.getJSONObject("user").getString("name"));
+        assertEquals(3,obj.getJSONObject("user").length());
+        obj=(LazyObject)LazyElement.parse(DOC,LazyProjection.compile("user.tags"));
+        // The tags array was selected as a whole, so its objects are kept in full
+        assertEquals(0,obj.getJSONObject("user").getJSONArray("tags").getJSONObject(1).getJSONArray("b").length());
+    }
+
+    @Test
+    public void testBytes() throws LazyException{
+        LazyProjection projection=LazyProjection.compile("event.type");
+        byte[] raw=DOC.getBytes(StandardCharsets.UTF_8);
+        LazyObject obj=(LazyObject)LazyElement.parse(raw,0,raw.length,projection);
+        assertEquals("click",obj.getJSONObject("event").getString("type"));
+        obj=(LazyObject)LazyElement.parse(ByteBuffer.wrap(raw),projection);
+        assertEquals(1,obj.length());
+    }
+
+    @Test
+    public void testRootArray() throws LazyException{
+        LazyArray array=(LazyArray)LazyElement.parse("[{\"a\":1,\"b\":2},3,{\"b\":4}]",LazyProjection.compile("b"));
+        assertEquals(3,array.length());
+        assertFalse(array.getJSONObject(0).has("a"));
+        assertEquals(2,array.getJSONObject(0).getInt("b"));
+        assertEquals(3,array.getInt(1));
+        assertEquals(4,array.getJSONObject(2).getInt("b"));
+    }
+
+    @Test
+    public void testErrors(){
+        String[] bad=new String[]{"{\"skipped\":[1,2}","{\"skipped\":tru}","{\"skipped\" 1}","{\"skipped\":1,}","{\"skipped\":\"open}"};
+        for(String str:bad){
+            try{
+                LazyElement.parse(str,LazyProjection.compile("other"));
+                fail(str);
+            }catch(LazyException e){
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEmptyPath(){
+        LazyProjection.compile("user..id");
+    }
+}
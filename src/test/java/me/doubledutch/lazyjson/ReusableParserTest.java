@@ -0,0 +1,81 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ReusableParserTest{
+    @Test
+    public void testReuse() throws LazyException{
+        LazyParser parser=new LazyParser();
+        for(int i=0;i<100;i++){
+            LazyObject obj=(LazyObject)parser.parse("{\"i\":"+i+",\"list\":[\"a\",{\"b\":"+(i*2)+"}]}");
+            assertEquals(i,obj.getInt("i"));
+            assertEquals(i*2,obj.getJSONArray("list").getJSONObject(1).getInt("b"));
+            assertEquals("a",obj.getJSONArray("list").getString(0));
+        }
+    }
+
+    @Test
+    public void testNodesReused() throws LazyException{
+        LazyParser parser=new LazyParser();
+        LazyElement first=parser.parse("{\"foo\":[1,2,3]}");
+        LazyNode node=first.root;
+        LazyArray second=(LazyArray)parser.parse("[true]");
+        assertSame(node,second.root);
+        assertEquals(1,second.length());
+        assertTrue(second.getBoolean(0));
+    }
+
+    @Test
+    public void testShorterDocument() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.parse("{\"a_very_long_field_name\":\"with a long value\"}");
+        LazyObject obj=(LazyObject)parser.parse("{\"a\":1}");
+        assertEquals("{\"a\":1}",obj.toString());
+        assertEquals(1,obj.length());
+    }
+
+    @Test
+    public void testMixedSources() throws LazyException{
+        LazyParser parser=new LazyParser();
+        byte[] raw="xx{\"foo\":\"bar\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals("bar",((LazyObject)parser.parse(raw,2,raw.length-2)).getString("foo"));
+        assertEquals(2,((LazyArray)parser.parse("[1,2]")).getInt(1));
+        assertEquals(3,((LazyArray)parser.parse(ByteBuffer.wrap("[3]".getBytes(StandardCharsets.UTF_8)))).getInt(0));
+    }
+
+    @Test
+    public void testReuseAfterError() throws LazyException{
+        LazyParser parser=new LazyParser();
+        try{
+            parser.parse("{\"foo\":[1,2");
+            fail("Truncated document should not parse");
+        }catch(LazyException e){
+            // Expected
+        }
+        assertEquals(42,((LazyObject)parser.parse("{\"foo\":42}")).getInt("foo"));
+    }
+
+    @Test
+    public void testIncrementalReuse() throws LazyException{
+        LazyParser parser=new LazyParser();
+        char[] data="{\"foo\":42}".toCharArray();
+        parser.feed(data,0,4);
+        parser.feed(data,4,data.length-4);
+        assertEquals(42,((LazyObject)parser.endOfInput()).getInt("foo"));
+        parser.reset();
+        parser.feed(ByteBuffer.wrap("[1,".getBytes(StandardCharsets.UTF_8)));
+        parser.feed(ByteBuffer.wrap("2]".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2,((LazyArray)parser.endOfInput()).getInt(1));
+        assertEquals(7,((LazyArray)parser.parse("[7]")).getInt(0));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testNoFeedAfterParse() throws LazyException{
+        LazyParser parser=new LazyParser();
+        parser.parse("[]");
+        parser.feed(ByteBuffer.wrap("[]".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,207 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class SegmentedFileTest{
+    private static String arrayDocument(){
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<40;i++){
+            buf.append("{\"id\":").append(i).append(",\"name\":\"item ").append(i).append("\",");
+            buf.append("\"tags\":[\"a\",\"b\\n\u00e6\"], \"ok\":true,\"none\":null,\"ratio\":0.5},\n");
+        }
+        buf.append("\"bl\u00e5b\u00e6r \ud83d\ude00 \\n\\u00e6\" , -1234567890123,1.5e-3,false,null,[");
+        for(int i=0;i<50;i++){
+            buf.append(i*1000).append(i<49?",":"");
+        }
+        buf.append("],{");
+        for(int i=0;i<30;i++){
+            buf.append("\"k").append(i).append("\" : ").append(i%2==0?"\"v"+i+"\"":""+i).append(i<29?",":"");
+        }
+        buf.append("}, [] ,{},\"last\"]\n");
+        return buf.toString();
+    }
+
+    private static String objectDocument(){
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<20;i++){
+            buf.append("\"field").append(i).append("\":[");
+            for(int j=0;j<i;j++){
+                buf.append("{\"x\":").append(j).append("},");
+            }
+            buf.append("\"end\"],");
+        }
+        buf.append("\"s\":\"\\u0041\\\"\",\"n\":12345678901234567890}");
+        return buf.toString();
+    }
+
+    private static LazyElement parse(String str,int segmentSize) throws IOException,LazyException{
+        Path file=Files.createTempFile("lazyjson",".json");
+        try{
+            Files.write(file,str.getBytes(StandardCharsets.UTF_8));
+            FileChannel channel=FileChannel.open(file,StandardOpenOption.READ);
+            try{
+                return LazyElement.parse(channel,segmentSize);
+            }finally{
+                channel.close();
+            }
+        }finally{
+            Files.delete(file);
+        }
+    }
+
+    private static void compare(LazyArray expected,LazyArray actual){
+        assertEquals(expected.length(),actual.length());
+        LazyNode token=expected.root.child;
+        for(int i=0;i<expected.length();i++){
+            switch(token.type){
+                case LazyNode.OBJECT:
+                    compare(expected.getJSONObject(i),actual.getJSONObject(i));
+                    break;
+                case LazyNode.ARRAY:
+                    compare(expected.getJSONArray(i),actual.getJSONArray(i));
+                    break;
+                case LazyNode.VALUE_STRING:
+                case LazyNode.VALUE_ESTRING:
+                    assertEquals(expected.getString(i),actual.getString(i));
+                    break;
+                case LazyNode.VALUE_INTEGER:
+                case LazyNode.VALUE_FLOAT:
+                    assertEquals(expected.getDouble(i),actual.getDouble(i),0);
+                    break;
+                case LazyNode.VALUE_NULL:
+                    assertTrue(actual.isNull(i));
+                    break;
+                default:
+                    assertEquals(expected.getBoolean(i),actual.getBoolean(i));
+            }
+            token=token.next;
+        }
+    }
+
+    private static void compare(LazyObject expected,LazyObject actual){
+        assertEquals(expected.length(),actual.length());
+        List<String> keys=new ArrayList<String>();
+        Iterator<String> it=actual.keys();
+        while(it.hasNext()){
+            keys.add(it.next());
+        }
+        int i=0;
+        for(LazyNode field=expected.root.child;field!=null;field=field.next){
+            String key=field.getStringValue(expected.source);
+            assertEquals(key,keys.get(i++));
+            assertTrue(actual.has(key));
+            switch(field.child.type){
+                case LazyNode.OBJECT:
+                    compare(expected.getJSONObject(key),actual.getJSONObject(key));
+                    break;
+                case LazyNode.ARRAY:
+                    compare(expected.getJSONArray(key),actual.getJSONArray(key));
+                    break;
+                case LazyNode.VALUE_STRING:
+                case LazyNode.VALUE_ESTRING:
+                    assertEquals(expected.getString(key),actual.getString(key));
+                    break;
+                case LazyNode.VALUE_INTEGER:
+                case LazyNode.VALUE_FLOAT:
+                    assertEquals(expected.getDouble(key),actual.getDouble(key),0);
+                    break;
+                case LazyNode.VALUE_NULL:
+                    assertTrue(actual.isNull(key));
+                    break;
+                default:
+                    assertEquals(expected.getBoolean(key),actual.getBoolean(key));
+            }
+        }
+        assertFalse(actual.has("missing"));
+    }
+
+    @Test
+    public void testSegmentedArray() throws IOException,LazyException{
+        String str=arrayDocument();
+        LazyArray expected=(LazyArray)LazyElement.parse(str.getBytes(StandardCharsets.UTF_8));
+        for(int size=40;size<400;size+=13){
+            LazyArray actual=(LazyArray)parse(str,size);
+            // The root and the objects in it span several segments
+            assertEquals(-1,actual.root.endIndex);
+            assertEquals(size<80,actual.getJSONObject(0).root.endIndex==-1);
+            compare(expected,actual);
+            assertEquals(-1234567890123l,actual.getLong(41));
+            assertEquals(expected.getJSONObject(3).getJSONArray("tags").toString(),actual.getJSONObject(3).getJSONArray("tags").toString());
+        }
+        // Small enough for a single segment
+        compare(expected,(LazyArray)parse(str,str.length()*2));
+    }
+
+    @Test
+    public void testSegmentedObject() throws IOException,LazyException{
+        String str=objectDocument();
+        LazyObject expected=(LazyObject)LazyElement.parse(str.getBytes(StandardCharsets.UTF_8));
+        for(int size=32;size<200;size+=11){
+            LazyObject actual=(LazyObject)parse(str,size);
+            assertEquals(-1,actual.root.endIndex);
+            compare(expected,actual);
+            // Repeated lookups go through the field index or shape
+            for(int i=0;i<3;i++){
+                assertEquals(7,actual.getJSONArray("field8").getJSONObject(7).getInt("x"));
+                assertEquals("A\"",actual.getString(new LazyKey("s")));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeElement() throws IOException,LazyException{
+        LazyArray array=(LazyArray)parse(arrayDocument(),64);
+        try{
+            array.toString();
+            fail("Expected an element spanning segments to have no string");
+        }catch(LazyException e){
+            // Expected
+        }
+        try{
+            array.toByteArray();
+            fail("Expected an element spanning segments to have no byte array");
+        }catch(LazyException e){
+            // Expected
+        }
+        assertEquals("[\"a\",\"b\\n\u00e6\"]",array.getJSONObject(0).getJSONArray("tags").toString());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testStringTooLarge() throws IOException,LazyException{
+        StringBuilder buf=new StringBuilder("[1,2,\"");
+        for(int i=0;i<100;i++){
+            buf.append('x');
+        }
+        parse(buf.append("\"]").toString(),64);
+    }
+
+    @Test
+    public void testErrors() throws IOException,LazyException{
+        String[] docs=new String[]{
+            "[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,tru,21,22,23,24]",
+            "[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24] x",
+            "[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24",
+            "{\"a\":1,\"b\":2,\"c\":3,\"d\":4,\"e\":5,\"f\":6,\"g\" 7,\"h\":8,\"i\":9}",
+            "[[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23],]",
+            "[{\"a\":1,\"b\":2,\"c\":3,\"d\":4,\"e\":5,\"f\":6,\"g\":7,\"h\":8,\"i\":9]"
+        };
+        for(String doc:docs){
+            try{
+                parse(doc,16);
+                fail("Expected error for "+doc);
+            }catch(LazyException e){
+                // Expected
+            }
+        }
+    }
+}
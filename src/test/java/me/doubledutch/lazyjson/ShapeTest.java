@@ -0,0 +1,70 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class ShapeTest{
+    // Field names are unique to each test so the global cache starts out
+    // without their shapes
+    private static String event(String prefix,String middle,int value){
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<20;i++){
+            if(i>0)buf.append(',');
+            String name=(i==10)?middle:prefix+i;
+            buf.append('"').append(name).append("\":").append(value+i);
+        }
+        buf.append(",\""+prefix+"0\":-1}");
+        return buf.toString();
+    }
+
+    private static LazyObject lookup(LazyObject obj,String prefix,String middle,int value) throws LazyException{
+        for(int j=0;j<2;j++){
+            for(int i=0;i<20;i++){
+                String name=(i==10)?middle:prefix+i;
+                assertEquals(value+i,obj.getInt(name));
+                assertEquals(value+i,obj.getInt(new LazyKey(name)));
+            }
+            assertFalse(obj.has(prefix+"missing"));
+            assertFalse(obj.has(new LazyKey(prefix+"missing")));
+        }
+        return obj;
+    }
+
+    @Test
+    public void testSharedShape() throws LazyException{
+        LazyObject first=lookup(new LazyObject(event("shared","sharedMid",0)),"shared","sharedMid",0);
+        assertNotNull(first.shape);
+        LazyObject second=lookup(new LazyObject(event("shared","sharedMid",100)),"shared","sharedMid",100);
+        assertSame(first.shape,second.shape);
+        byte[] raw=event("shared","sharedMid",7).getBytes(StandardCharsets.UTF_8);
+        LazyObject third=lookup(new LazyObject(raw),"shared","sharedMid",7);
+        assertSame(first.shape,third.shape);
+    }
+
+    @Test
+    public void testSameFingerprint() throws LazyException{
+        // Same number, lengths and first and last names, but a different
+        // name in the middle
+        LazyObject first=lookup(new LazyObject(event("print","printAAA",0)),"print","printAAA",0);
+        assertNotNull(first.shape);
+        LazyObject second=lookup(new LazyObject(event("print","printBBB",1)),"print","printBBB",1);
+        assertNull(second.shape);
+        // Seen twice in a row, the new shape takes over
+        LazyObject third=lookup(new LazyObject(event("print","printBBB",2)),"print","printBBB",2);
+        assertNotNull(third.shape);
+        assertNotSame(first.shape,third.shape);
+        LazyObject fourth=lookup(new LazyObject(event("print","printBBB",3)),"print","printBBB",3);
+        assertSame(third.shape,fourth.shape);
+        // The old shape still works for objects that already use it
+        lookup(first,"print","printAAA",0);
+    }
+
+    @Test
+    public void testSmallObject() throws LazyException{
+        LazyObject obj=new LazyObject("{\"smallA\":1,\"smallB\":2}");
+        assertEquals(1,obj.getInt("smallA"));
+        assertEquals(2,obj.getInt("smallB"));
+        assertNull(obj.shape);
+    }
+}
@@ -0,0 +1,111 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+public class TapeTest{
+    private static final String DOC="{\"id\":17,\"name\":\"tape\",\"escaped\":\"a\\\"b\",\"ratio\":-2.5e3,"
+        +"\"on\":true,\"off\":false,\"none\":null,\"empty\":{},\"list\":[],"
+        +"\"nested\":{\"items\":[1,{\"deep\":[[\"x\"],{\"y\":2}]},\"three\"],\"count\":3}}";
+
+    @Test
+    public void testValues() throws LazyException{
+        LazyObject obj=(LazyObject)LazyElement.parseTape(DOC);
+        assertEquals(17,obj.getInt("id"));
+        assertEquals("tape",obj.getString("name"));
+        assertEquals("a\"b",obj.getString("escaped"));
+        assertEquals(-2500.0,obj.getDouble("ratio"),0);
+        assertTrue(obj.getBoolean("on"));
+        assertFalse(obj.getBoolean("off"));
+        assertTrue(obj.isNull("none"));
+        assertEquals(0,obj.getJSONObject("empty").length());
+        assertEquals(0,obj.getJSONArray("list").length());
+        assertEquals(10,obj.length());
+        LazyObject nested=obj.getJSONObject("nested");
+        assertEquals(3,nested.getInt("count"));
+        LazyArray items=nested.getJSONArray("items");
+        assertEquals(3,items.length());
+        assertEquals(1,items.getInt(0));
+        assertEquals("three",items.getString(2));
+        LazyArray deep=items.getJSONObject(1).getJSONArray("deep");
+        assertEquals("x",deep.getJSONArray(0).getString(0));
+        assertEquals(2,deep.getJSONObject(1).getInt("y"));
+        assertEquals("{\"y\":2}",deep.getJSONObject(1).toString());
+    }
+
+    @Test
+    public void testKeys() throws LazyException{
+        LazyObject obj=(LazyObject)LazyElement.parseTape(DOC);
+        Iterator<String> keys=obj.keys();
+        assertEquals("id",keys.next());
+        assertEquals("name",keys.next());
+        assertTrue(obj.has("nested"));
+        assertFalse(obj.has("missing"));
+    }
+
+    @Test
+    public void testSameAsNodes() throws LazyException{
+        LazyObject nodes=new LazyObject(DOC);
+        LazyObject tape=(LazyObject)LazyElement.parseTape(DOC);
+        assertEquals(nodes.toString(),tape.toString());
+        assertTrue(Arrays.equals(nodes.toByteArray(),tape.toByteArray()));
+        assertEquals(nodes.extractTemplate(),tape.extractTemplate());
+    }
+
+    @Test
+    public void testBytes() throws LazyException{
+        byte[] raw=("  "+DOC+"\n").getBytes(StandardCharsets.UTF_8);
+        LazyObject obj=(LazyObject)LazyElement.parseTape(raw,0,raw.length);
+        assertEquals("three",obj.getJSONObject("nested").getJSONArray("items").getString(2));
+        obj=(LazyObject)LazyElement.parseTape(ByteBuffer.wrap(raw));
+        assertEquals(17,obj.getInt("id"));
+    }
+
+    @Test
+    public void testLargeArray() throws LazyException{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<5000;i++){
+            if(i>0){
+                buf.append(',');
+            }
+            buf.append("{\"i\":").append(i).append(",\"v\":[").append(i).append("]}");
+        }
+        buf.append(']');
+        LazyArray array=(LazyArray)LazyElement.parseTape(buf.toString());
+        assertEquals(5000,array.length());
+        assertEquals(4999,array.getJSONObject(4999).getJSONArray("v").getInt(0));
+    }
+
+    @Test
+    public void testSameErrors(){
+        String[] bad=new String[]{"","  ","42","{","[","{\"foo\"}","{\"foo\":}","{\"foo\":1,}","[1,]",
+            "[1 2","{\"a\":[1}","[nul]","[tru]","[fals]","[-]","[1.]","[1e]","[\"open]","{}x","[]]",
+            "{\"a\":1}}","{[1]}","[}"};
+        for(String str:bad){
+            String expected=null;
+            try{
+                new LazyObject(str);
+            }catch(LazyException e){
+                expected=e.getMessage();
+            }
+            try{
+                new LazyArray(str);
+            }catch(LazyException e){
+                if(str.trim().startsWith("[")){
+                    expected=e.getMessage();
+                }
+            }
+            String actual=null;
+            try{
+                LazyElement.parseTape(str);
+            }catch(LazyException e){
+                actual=e.getMessage();
+            }
+            assertEquals(str,expected,actual);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ValidateTest{
+    private static String deep(int depth){
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<depth;i++){
+            buf.append("{\"a\":[");
+        }
+        buf.append("1");
+        for(int i=0;i<depth;i++){
+            buf.append("]}");
+        }
+        return buf.toString();
+    }
+
+    private static final String[] DOCS=new String[]{
+        "{}","[]"," { \"foo\" : [ 1 , -2.5e3 , true , false , null , \"bar\" ] } ","[{\"a\":{\"b\":[[],{}]}}]",
+        "{\"esc\":\"a\\\"b\\\\\"}","[\"}]\\\"[{\"]",deep(100),"{\"a\":[1}","[{\"a\":1]",
+        "","  ","42","{","[","{\"foo\"}","{\"foo\":}","{\"foo\":1,}","[1,]","[1 2","[nul]","[tru]",
+        "[fals]","[-]","[1.]","[1e]","[\"open]","{}x","[]]","{\"a\":1}}","{[1]}","[}","{]","{\"a\" 1}",
+        "[x]",deep(40).substring(1)
+    };
+
+    // Malformed documents with the error somewhere past the start
+    private static final String[] MALFORMED=new String[]{
+        "{,}","{\"a\":{\"b\":1},}","[\"\\x\"]","[\"a\\u12\"]",
+        "[1e+]","[-x]","[1,[2,{\"c\":nul}]]","[{\"a\":1},{\"b\" 2}]",
+        "[true,fals,3]","  {\"a\":\"b\"} ]","[\"\\n\\ue9\"]","{\"a\":[]]}"
+    };
+
+    private static String parseError(String str){
+        try{
+            new LazyParser(str).tokenize();
+        }catch(LazyException e){
+            return e.toString();
+        }
+        return null;
+    }
+
+    @Test
+    public void testSameAsParse(){
+        for(String str:DOCS){
+            String actual=null;
+            try{
+                LazyParser.validate(str);
+            }catch(LazyException e){
+                actual=e.toString();
+            }
+            assertEquals(str,parseError(str),actual);
+            byte[] raw=str.getBytes(StandardCharsets.UTF_8);
+            actual=null;
+            try{
+                LazyParser.validate(raw,0,raw.length);
+            }catch(LazyException e){
+                actual=e.toString();
+            }
+            assertEquals(str,parseError(str),actual);
+        }
+    }
+
+    @Test
+    public void testSamePosition(){
+        for(String str:MALFORMED){
+            LazyException expected=null;
+            try{
+                new LazyParser(str).tokenize();
+                fail("Expected parse error for "+str);
+            }catch(LazyException e){
+                expected=e;
+            }
+            try{
+                LazyParser.validate(str);
+                fail("Expected validation error for "+str);
+            }catch(LazyException e){
+                assertEquals(str,expected.getPosition(),e.getPosition());
+                assertEquals(str,expected.getMessage(),e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testByteBuffer() throws LazyException{
+        ByteBuffer buf=ByteBuffer.wrap("xx[\"s\u00f8\",{\"a\":1}]yy".getBytes(StandardCharsets.UTF_8));
+        buf.position(2);
+        buf.limit(buf.limit()-2);
+        LazyParser.validate(buf);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidByteBuffer() throws LazyException{
+        LazyParser.validate(ByteBuffer.wrap("{\"a\":[1,2]".getBytes(StandardCharsets.UTF_8)));
+    }
+}